@@ -0,0 +1,44 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmark of reading a configuration file into an Engine.
+ *  @author Christopher Lee
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConfigBench {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "64", "256" })
+    private int size;
+
+    /** Number of moving rotors, besides the reflector. */
+    @Param({ "3", "5", "8" })
+    private int rotors;
+
+    /** Text of the configuration file. */
+    private String config;
+
+    /** Build the configuration. */
+    @Setup
+    public void setUp() {
+        config = Configs.config(size, rotors);
+    }
+
+    /** Read the configuration. */
+    @Benchmark
+    public Engine readConfig() {
+        return new Engine(config);
+    }
+}
@@ -0,0 +1,126 @@
+package enigma;
+
+import java.util.Random;
+
+/** Randomly wired configurations and messages of given sizes, for the
+ *  benchmarks.  The same arguments always give the same results.
+ *  @author Christopher Lee
+ */
+final class Configs {
+
+    /** Not instantiable. */
+    private Configs() {
+    }
+
+    /** Return an alphabet of SIZE characters (at most 62 + 256), none of
+     *  which is special in a configuration file. */
+    static String alphabet(int size) {
+        StringBuilder result = new StringBuilder();
+        for (char c = 'A'; c <= 'Z'; c++) {
+            result.append(c);
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            result.append(c);
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            result.append(c);
+        }
+        for (char c = '\u0100'; result.length() < size; c++) {
+            result.append(c);
+        }
+        return result.substring(0, size);
+    }
+
+    /** Return cycles describing a random permutation of ALPHABET, drawn
+     *  from RANDOM. */
+    static String permutation(String alphabet, Random random) {
+        char[] chars = shuffled(alphabet, random);
+        StringBuilder result = new StringBuilder();
+        int start = 0;
+        while (start < chars.length) {
+            int end = Math.min(chars.length,
+                               start + 1 + random.nextInt(chars.length));
+            result.append('(').append(chars, start, end - start).append(") ");
+            start = end;
+        }
+        return result.toString().trim();
+    }
+
+    /** Return cycles pairing the first 2 * PAIRS characters of a random
+     *  shuffle of ALPHABET, drawn from RANDOM. */
+    static String pairs(String alphabet, int pairs, Random random) {
+        char[] chars = shuffled(alphabet, random);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < pairs; i++) {
+            result.append('(').append(chars[2 * i]).append(chars[2 * i + 1])
+                .append(") ");
+        }
+        return result.toString().trim();
+    }
+
+    /** Return the text of a configuration file for an alphabet of SIZE
+     *  characters (which must be even), with a reflector and ROTORS
+     *  moving rotors named R1, ..., each with a single notch, all of them
+     *  needed to fill the machine. */
+    static String config(int size, int rotors) {
+        Random random = new Random(SEED);
+        String alphabet = alphabet(size);
+        StringBuilder result = new StringBuilder();
+        result.append(alphabet).append('\n');
+        result.append(rotors + 1).append(' ').append(rotors).append('\n');
+        for (int i = 1; i <= rotors; i++) {
+            result.append("R").append(i).append(" M")
+                .append(alphabet.charAt(random.nextInt(size))).append(' ')
+                .append(permutation(alphabet, random)).append('\n');
+        }
+        result.append("B R ").append(pairs(alphabet, size / 2, random))
+            .append('\n');
+        return result.toString();
+    }
+
+    /** Return a setting line for a machine configured by config(SIZE,
+     *  ROTORS), with random rotor positions and a fraction DENSITY of the
+     *  alphabet plugged. */
+    static String setting(int size, int rotors, double density) {
+        Random random = new Random(SEED);
+        String alphabet = alphabet(size);
+        StringBuilder result = new StringBuilder("* B");
+        for (int i = 1; i <= rotors; i++) {
+            result.append(" R").append(i);
+        }
+        result.append(' ');
+        for (int i = 1; i <= rotors; i++) {
+            result.append(alphabet.charAt(random.nextInt(size)));
+        }
+        result.append(' ')
+            .append(pairs(alphabet, (int) (density * size / 2), random));
+        return result.toString().trim();
+    }
+
+    /** Return a message of LENGTH random characters from the alphabet of
+     *  SIZE characters. */
+    static String message(int size, int length) {
+        Random random = new Random(SEED);
+        String alphabet = alphabet(size);
+        char[] result = new char[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = alphabet.charAt(random.nextInt(size));
+        }
+        return new String(result);
+    }
+
+    /** Return the characters of ALPHABET in an order drawn from RANDOM. */
+    private static char[] shuffled(String alphabet, Random random) {
+        char[] chars = alphabet.toCharArray();
+        for (int i = chars.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            char c = chars[i];
+            chars[i] = chars[j];
+            chars[j] = c;
+        }
+        return chars;
+    }
+
+    /** Seed of all random choices. */
+    private static final long SEED = 61;
+}
@@ -0,0 +1,76 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of Machine.convert(int) and Machine.convert(String) on
+ *  machines of various sizes.
+ *  @author Christopher Lee
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MachineBench {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "64", "256" })
+    private int size;
+
+    /** Number of moving rotors, besides the reflector. */
+    @Param({ "3", "5", "8" })
+    private int rotors;
+
+    /** Fraction of the alphabet connected by the plugboard. */
+    @Param({ "0.0", "0.5", "1.0" })
+    private double density;
+
+    /** Number of characters in the message. */
+    @Param({ "64", "4096", "262144" })
+    private int length;
+
+    /** Machine under test. */
+    private Machine machine;
+
+    /** Message to convert. */
+    private String message;
+
+    /** The message as alphabet indices. */
+    private int[] indices;
+
+    /** Build and set the machine and the message. */
+    @Setup
+    public void setUp() {
+        Engine engine = new Engine(Configs.config(size, rotors));
+        machine = engine.machine(Configs.setting(size, rotors, density));
+        message = Configs.message(size, length);
+        indices = new int[length];
+        for (int i = 0; i < length; i++) {
+            indices[i] = machine.getAlphabet().toInt(message.charAt(i));
+        }
+    }
+
+    /** Convert the message one index at a time; returns a value
+     *  depending on all the results. */
+    @Benchmark
+    public int convertInt() {
+        int result = 0;
+        for (int index : indices) {
+            result += machine.convert(index);
+        }
+        return result;
+    }
+
+    /** Convert the message as a string. */
+    @Benchmark
+    public String convertString() {
+        return machine.convert(message);
+    }
+}
@@ -0,0 +1,70 @@
+package enigma;
+
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmark of Main's processing of setting and message lines into
+ *  grouped output.
+ *  @author Christopher Lee
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MainBench {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "64", "256" })
+    private int size;
+
+    /** Number of moving rotors, besides the reflector. */
+    @Param({ "3", "5", "8" })
+    private int rotors;
+
+    /** Fraction of the alphabet connected by the plugboard. */
+    @Param({ "0.0", "0.5", "1.0" })
+    private double density;
+
+    /** Number of message characters in the input. */
+    @Param({ "64", "4096", "262144" })
+    private int length;
+
+    /** Engine configured by config. */
+    private Engine engine;
+
+    /** Input: a setting line followed by message lines. */
+    private String input;
+
+    /** Build the engine and the input. */
+    @Setup
+    public void setUp() {
+        engine = new Engine(Configs.config(size, rotors));
+        String message = Configs.message(size, length);
+        StringBuilder text = new StringBuilder();
+        text.append(Configs.setting(size, rotors, density)).append('\n');
+        for (int i = 0; i < length; i += LINE_LENGTH) {
+            text.append(message, i, Math.min(length, i + LINE_LENGTH))
+                .append('\n');
+        }
+        input = text.toString();
+    }
+
+    /** Convert the input and group the output, discarding it. */
+    @Benchmark
+    public void process() {
+        new Main(engine, new StringReader(input), Writer.nullWriter())
+            .processStream(engine.newMachine());
+    }
+
+    /** Number of message characters per input line. */
+    private static final int LINE_LENGTH = 72;
+}
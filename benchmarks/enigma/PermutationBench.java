@@ -0,0 +1,61 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of Permutation.permute and Permutation.invert, applied to
+ *  every index of alphabets of various sizes.
+ *  @author Christopher Lee
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PermutationBench {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "64", "256" })
+    private int size;
+
+    /** Permutation under test. */
+    private Permutation perm;
+
+    /** Wire up a random permutation of the alphabet. */
+    @Setup
+    public void setUp() {
+        Alphabet alphabet = new Alphabet(Configs.alphabet(size));
+        perm = new Permutation(
+            Configs.permutation(Configs.alphabet(size), new Random(size)),
+            alphabet);
+    }
+
+    /** Permute every index once; returns a value depending on all the
+     *  results. */
+    @Benchmark
+    public int permute() {
+        int result = 0;
+        for (int p = 0; p < size; p++) {
+            result += perm.permute(p);
+        }
+        return result;
+    }
+
+    /** Invert every index once; returns a value depending on all the
+     *  results. */
+    @Benchmark
+    public int invert() {
+        int result = 0;
+        for (int c = 0; c < size; c++) {
+            result += perm.invert(c);
+        }
+        return result;
+    }
+}
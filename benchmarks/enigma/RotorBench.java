@@ -0,0 +1,52 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmark of Rotor.convertForward, applied to every index of alphabets
+ *  of various sizes at every setting.
+ *  @author Christopher Lee
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RotorBench {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "64", "256" })
+    private int size;
+
+    /** Rotor under test. */
+    private Rotor rotor;
+
+    /** Wire up a rotor with a random permutation of the alphabet. */
+    @Setup
+    public void setUp() {
+        Alphabet alphabet = new Alphabet(Configs.alphabet(size));
+        rotor = new MovingRotor("R", new Permutation(
+            Configs.permutation(Configs.alphabet(size), new Random(size)),
+            alphabet), "");
+    }
+
+    /** Convert every index at every setting; returns a value depending
+     *  on all the results. */
+    @Benchmark
+    public int convertForward() {
+        int result = 0;
+        for (int posn = 0; posn < size; posn++) {
+            for (int p = 0; p < size; p++) {
+                result += rotor.convertForward(p, posn);
+            }
+        }
+        return result;
+    }
+}
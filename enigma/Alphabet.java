@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
  *  @author Christopher Lee
@@ -10,6 +12,35 @@ class Alphabet {
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
         _chars = chars;
+        _letters = chars.toCharArray();
+        int min = _letters.length == 0 ? 0 : Character.MAX_VALUE;
+        int max = min - 1;
+        for (char c : _letters) {
+            min = Math.min(min, c);
+            max = Math.max(max, c);
+        }
+        if (max - min < MAX_DENSE_RANGE) {
+            _base = min;
+            _index = new int[max - min + 1];
+            Arrays.fill(_index, -1);
+            for (int i = _letters.length - 1; i >= 0; i--) {
+                _index[_letters[i] - min] = i;
+            }
+            _hashKeys = null;
+        } else {
+            int capacity = Integer.highestOneBit(_letters.length) * 4;
+            _base = 0;
+            _index = new int[capacity];
+            _hashKeys = new char[capacity];
+            Arrays.fill(_index, -1);
+            for (int i = 0; i < _letters.length; i++) {
+                int slot = slot(_letters[i]);
+                if (_index[slot] < 0) {
+                    _hashKeys[slot] = _letters[i];
+                    _index[slot] = i;
+                }
+            }
+        }
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -25,26 +56,63 @@ class Alphabet {
 
     /** Returns the size of the alphabet. */
     int size() {
-        return _chars.length();
+        return _letters.length;
     }
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        return _chars.contains(Character.toString(ch));
+        return toInt(ch) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
      *  0 <= INDEX < size(). */
     char toChar(int index) {
-        return _chars.charAt(index);
+        return _letters[index];
     }
 
     /** Returns the index of character CH which must be in
-     *  the alphabet. This is the inverse of toChar(). */
+     *  the alphabet. This is the inverse of toChar(). Returns -1 if
+     *  CH is not in the alphabet. */
     int toInt(char ch) {
-        return _chars.indexOf(ch);
+        if (_hashKeys == null) {
+            int k = ch - _base;
+            if (k < 0 || k >= _index.length) {
+                return -1;
+            }
+            return _index[k];
+        }
+        return _index[slot(ch)];
+    }
+
+    /** Returns the slot of the open-addressed table _hashKeys that holds
+     *  CH, or the empty slot where CH would go. */
+    private int slot(char ch) {
+        int mask = _hashKeys.length - 1;
+        int k = (ch * 0x9E3779B1 >>> 16) & mask;
+        while (_index[k] >= 0 && _hashKeys[k] != ch) {
+            k = (k + 1) & mask;
+        }
+        return k;
     }
 
+    /** Widest range of character codes indexed by a direct table. */
+    private static final int MAX_DENSE_RANGE = 1 << 12;
+
     /**Strings of characters that the Alphabet contains. */
     private String _chars;
+
+    /** The characters of the alphabet, in order. */
+    private final char[] _letters;
+
+    /** Smallest character code in the alphabet when _index is in use. */
+    private final int _base;
+
+    /** For compact alphabets, the index of each character C is at
+     *  _index[C - _base], or -1 for characters not in the alphabet.
+     *  For sparse alphabets, the index of _hashKeys[K] is _index[K]. */
+    private final int[] _index;
+
+    /** Open-addressed keys for alphabets whose codes span at least
+     *  MAX_DENSE_RANGE, or null for compact alphabets. */
+    private final char[] _hashKeys;
 }
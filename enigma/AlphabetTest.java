@@ -0,0 +1,54 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author Christopher Lee
+ */
+public class AlphabetTest {
+
+    @Test
+    public void checkDefault() {
+        Alphabet alpha = new Alphabet();
+        assertEquals(26, alpha.size());
+        for (int i = 0; i < UPPER_STRING.length(); i++) {
+            assertEquals(i, alpha.toInt(UPPER_STRING.charAt(i)));
+            assertEquals(UPPER_STRING.charAt(i), alpha.toChar(i));
+        }
+        assertTrue(alpha.contains('Q'));
+        assertFalse(alpha.contains('a'));
+        assertFalse(alpha.contains('@'));
+        assertEquals(-1, alpha.toInt(' '));
+    }
+
+    @Test
+    public void checkPunctuation() {
+        Alphabet alpha = new Alphabet("AZ09.,?");
+        assertEquals(7, alpha.size());
+        assertEquals(3, alpha.toInt('9'));
+        assertEquals(6, alpha.toInt('?'));
+        assertFalse(alpha.contains('B'));
+    }
+
+    @Test
+    public void checkSparse() {
+        Alphabet alpha = new Alphabet("A\u00e9\u4e2d\uffe5Z");
+        assertEquals(5, alpha.size());
+        assertEquals(0, alpha.toInt('A'));
+        assertEquals(2, alpha.toInt('\u4e2d'));
+        assertEquals(3, alpha.toInt('\uffe5'));
+        assertEquals('\u00e9', alpha.toChar(1));
+        assertFalse(alpha.contains('B'));
+        assertFalse(alpha.contains('\u4e2e'));
+    }
+
+    @Test
+    public void checkEmpty() {
+        Alphabet alpha = new Alphabet("");
+        assertEquals(0, alpha.size());
+        assertFalse(alpha.contains('A'));
+    }
+}
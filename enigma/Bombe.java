@@ -0,0 +1,326 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A known-plaintext attack for an unknown plugboard, in the manner of the
+ *  Turing-Welchman bombe.  The crib and the ciphertext under it form a
+ *  menu: a graph on the alphabet with an edge from each crib letter to
+ *  its ciphertext letter, labelled with its position.  As the plugboard P
+ *  consists of pairs, the ends A and B of an edge at position I satisfy
+ *  P(B) = S(P(A)), where S is the substitution the rotors alone perform
+ *  there.  For each rotor order and starting position, every hypothesis
+ *  P(T) = H about the most connected letter T of the menu is followed
+ *  through the menu and through the symmetry of P (the diagonal board),
+ *  recording the implied values of P as a bit matrix, until either some
+ *  letter has two values, which refutes the hypothesis, or nothing new
+ *  follows.  Each hypothesis that survives is a candidate, reported with
+ *  the plugboard pairs it implies.  Parts of the menu not connected to T
+ *  are not used, so candidates may need checking against the rest of the
+ *  crib.
+ *  @author Christopher Lee
+ */
+class Bombe {
+
+    /** A search among the rotors configured in ENGINE. */
+    Bombe(Engine engine) {
+        _engine = engine;
+        _alphabet = engine.alphabet();
+        Permutation unplugged = new Permutation("", _alphabet);
+        _machines = ThreadLocal.withInitial(() -> {
+            Machine machine = _engine.newMachine();
+            machine.setPlugboard(unplugged);
+            return machine;
+        });
+        _orders = CribSearch.rotorOrders(engine.newMachine());
+    }
+
+    /** Returns the number of rotor orders I search. */
+    int numOrders() {
+        return _orders.size();
+    }
+
+    /** Returns the settings (rotor order, positions at the start of
+     *  CIPHERTEXT and plugboard pairs) under which CIPHERTEXT[OFFSET ..]
+     *  may decrypt to CRIB, searching on POOL.  Spaces in CIPHERTEXT and
+     *  CRIB are ignored, and OFFSET counts the other characters. */
+    CribSearch.Result search(String ciphertext, String crib, int offset,
+                             ForkJoinPool pool) {
+        int[] cipher = CribSearch.indices(_alphabet, ciphertext);
+        int[] plain = CribSearch.indices(_alphabet, crib);
+        if (offset < 0 || offset + plain.length > cipher.length) {
+            throw error("crib does not fit in the ciphertext at %d", offset);
+        }
+        int[] source = new int[plain.length];
+        for (int i = 0; i < plain.length; i++) {
+            source[i] = cipher[offset + i];
+        }
+        ConcurrentLinkedQueue<String> found = new ConcurrentLinkedQueue<>();
+        LongAdder keys = new LongAdder();
+        long start = System.nanoTime();
+        int size = _alphabet.size();
+        if ((long) _orders.size() * size > Integer.MAX_VALUE) {
+            throw error("too many rotor orders to search");
+        }
+        if (!CribSearch.selfEnciphered(source, plain)) {
+            Menu menu = new Menu(plain, source, size);
+            pool.invoke(new ParallelRange(0, _orders.size() * size, task -> {
+                int[] order = _orders.get(task / size);
+                keys.add(searchTask(order, task % size, offset, menu,
+                                    found));
+            }));
+        }
+        return new CribSearch.Result(new ArrayList<>(found), keys.sum(),
+                                     System.nanoTime() - start);
+    }
+
+    /** Test every key with rotor order ORDER in which the leftmost rotor
+     *  after the reflector is at position FIRST against MENU, whose first
+     *  position is OFFSET characters into the message, recording the
+     *  surviving hypotheses in FOUND.  Returns the number of keys
+     *  tried. */
+    private long searchTask(int[] order, int first, int offset, Menu menu,
+                            ConcurrentLinkedQueue<String> found) {
+        Machine machine = _machines.get();
+        machine.insertRotors(order);
+        int size = _alphabet.size();
+        long perFirst = 1;
+        for (int i = 2; i < order.length; i++) {
+            perFirst *= size;
+        }
+        Closure closure = new Closure(menu, size);
+        int[] subs = closure._subs;
+        long base = first * perFirst;
+        for (long key = base; key < base + perFirst; key++) {
+            machine.setPositionKey(key);
+            machine.advance(offset);
+            for (int i = 0; i < menu._length; i++) {
+                int forward = 2 * i * size, backward = forward + size;
+                machine.advance(1);
+                machine.substitution(subs, forward);
+                for (int x = 0; x < size; x++) {
+                    subs[backward + subs[forward + x]] = x;
+                }
+            }
+            for (int h = 0; h < size; h++) {
+                if (closure.closes(menu._test, h)) {
+                    String pairs = closure.pairs(_alphabet);
+                    found.add(CribSearch.settingLine(machine, key, pairs));
+                }
+                closure.clear();
+            }
+        }
+        return perFirst;
+    }
+
+    /** The letters of a crib and its ciphertext, as a graph. */
+    private static class Menu {
+        /** The menu of the crib PLAIN over ciphertext CIPHER, in an
+         *  alphabet of SIZE characters. */
+        Menu(int[] plain, int[] cipher, int size) {
+            _length = plain.length;
+            int[] degree = new int[size];
+            for (int i = 0; i < _length; i++) {
+                degree[plain[i]] += 1;
+                degree[cipher[i]] += 1;
+            }
+            _partners = new int[size][];
+            _tables = new int[size][];
+            int test = 0;
+            for (int a = 0; a < size; a++) {
+                _partners[a] = new int[degree[a]];
+                _tables[a] = new int[degree[a]];
+                if (degree[a] > degree[test]) {
+                    test = a;
+                }
+            }
+            _test = test;
+            int[] fill = new int[size];
+            for (int i = 0; i < _length; i++) {
+                int p = plain[i], c = cipher[i];
+                _partners[p][fill[p]] = c;
+                _tables[p][fill[p]++] = 2 * i * size;
+                _partners[c][fill[c]] = p;
+                _tables[c][fill[c]++] = (2 * i + 1) * size;
+            }
+        }
+
+        /** Number of edges (crib letters). */
+        private final int _length;
+        /** The letter on which hypotheses are made. */
+        private final int _test;
+        /** _partners[A] are the letters joined to A by an edge. */
+        private final int[][] _partners;
+        /** _tables[A][K] is the offset in Closure._subs of the
+         *  substitution carrying P(A) to P(_partners[A][K]). */
+        private final int[][] _tables;
+    }
+
+    /** The consequences of a hypothesis about the plugboard, with the
+     *  space to compute them. */
+    private static class Closure {
+        /** Space to follow hypotheses through MENU in an alphabet of SIZE
+         *  characters. */
+        Closure(Menu menu, int size) {
+            _menu = menu;
+            _size = size;
+            _words = (size + Long.SIZE - 1) / Long.SIZE;
+            _subs = new int[2 * menu._length * size];
+            _bits = new long[size * _words];
+            _counts = new int[size];
+            _letters = new int[size + 1];
+            _values = new int[size + 1];
+        }
+
+        /** Returns true iff the hypothesis P(A) = X and the current
+         *  substitutions imply no letter two plugboard partners. */
+        boolean closes(int a, int x) {
+            if (!assume(a, x)) {
+                return false;
+            }
+            for (int head = 0; head < _top; head++) {
+                int b = _letters[head], y = _values[head];
+                int[] partners = _menu._partners[b];
+                int[] tables = _menu._tables[b];
+                for (int k = 0; k < partners.length; k++) {
+                    if (!assume(partners[k], _subs[tables[k] + y])) {
+                        return false;
+                    }
+                }
+                if (!assume(y, b)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Record that P(A) = X, if not already recorded.  Returns false
+         *  iff A already had another value. */
+        private boolean assume(int a, int x) {
+            int w = a * _words + (x >>> LOG_WORD);
+            long bit = 1L << x;
+            if ((_bits[w] & bit) != 0) {
+                return true;
+            }
+            _bits[w] |= bit;
+            _letters[_top] = a;
+            _values[_top] = x;
+            _top += 1;
+            return _counts[a]++ == 0;
+        }
+
+        /** Returns the cycles of the plugboard pairs implied by the last
+         *  hypothesis to close, in the order of ALPHABET. */
+        String pairs(Alphabet alphabet) {
+            int[] partner = new int[_size];
+            for (int i = 0; i < _top; i++) {
+                partner[_letters[i]] = _values[i] + 1;
+            }
+            StringBuilder result = new StringBuilder();
+            for (int a = 0; a < _size; a++) {
+                if (partner[a] > a + 1) {
+                    if (result.length() > 0) {
+                        result.append(' ');
+                    }
+                    result.append('(').append(alphabet.toChar(a))
+                        .append(alphabet.toChar(partner[a] - 1)).append(')');
+                }
+            }
+            return result.toString();
+        }
+
+        /** Forget the last hypothesis. */
+        void clear() {
+            for (int i = 0; i < _top; i++) {
+                int a = _letters[i];
+                _bits[a * _words + (_values[i] >>> LOG_WORD)] &=
+                    ~(1L << _values[i]);
+                _counts[a] = 0;
+            }
+            _top = 0;
+        }
+
+        /** The menu followed. */
+        private final Menu _menu;
+        /** Size of the alphabet. */
+        private final int _size;
+        /** Words per row of _bits. */
+        private final int _words;
+        /** The substitutions of the rotors at each position of the menu
+         *  (at 2 * I * _size) and their inverses (at (2 * I + 1) *
+         *  _size). */
+        private final int[] _subs;
+        /** Bit X of row A is set iff P(A) = X is implied. */
+        private final long[] _bits;
+        /** _counts[A] is the number of values implied for P(A). */
+        private final int[] _counts;
+        /** _letters[I] and _values[I], I < _top, are the implications in
+         *  the order found, with those not yet followed last. */
+        private final int[] _letters, _values;
+        /** Number of implications. */
+        private int _top;
+    }
+
+    /** Search for the crib given by ARGS: the name of a configuration
+     *  file, the ciphertext, the crib, and the number of ciphertext
+     *  characters preceding the crib.  Prints the candidate setting lines
+     *  and the rate of search. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 4) {
+                throw error("Usage: java enigma.Bombe CONFIG CIPHERTEXT "
+                            + "CRIB OFFSET");
+            }
+            String config = new String(
+                Files.readAllBytes(new File(args[0]).toPath()),
+                Charset.defaultCharset());
+            int offset;
+            try {
+                offset = Integer.parseInt(args[3]);
+            } catch (NumberFormatException excp) {
+                throw error("bad offset: %s", args[3]);
+            }
+            Bombe bombe = new Bombe(new Engine(config));
+            CribSearch.Result result =
+                bombe.search(args[1], args[2], offset,
+                             ForkJoinPool.commonPool());
+            for (String candidate : result.candidates()) {
+                System.out.println(candidate);
+            }
+            System.err.printf("%d keys in %d rotor orders, %.0f keys/s, "
+                              + "%d candidates%n", result.keys(),
+                              bombe.numOrders(), result.keysPerSecond(),
+                              result.candidates().size());
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: could not read %s%n", args[0]);
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Log base 2 of the number of bits in a long. */
+    private static final int LOG_WORD = 6;
+
+    /** The configuration searched. */
+    private final Engine _engine;
+
+    /** The alphabet of _engine. */
+    private final Alphabet _alphabet;
+
+    /** All legal rotor orders, as indices of available rotors. */
+    private final List<int[]> _orders;
+
+    /** Machine used by each thread, with no plugboard. */
+    private final ThreadLocal<Machine> _machines;
+}
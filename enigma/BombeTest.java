@@ -0,0 +1,50 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.AfterClass;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Christopher Lee
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Pool on which the tests run searches. */
+    private static final ForkJoinPool POOL = new ForkJoinPool(2);
+
+    /** Release the threads of POOL. */
+    @AfterClass
+    public static void shutDownPool() {
+        POOL.shutdown();
+    }
+
+    @Test
+    public void checkDeducesPlugboard() {
+        Engine engine = new Engine(CribSearchTest.CONFIG);
+        String setting = "* B III I QD (AT) (CG) (KM) (RW)";
+        String plain = "ATTACKATDAWNONTHEEASTERNFRONT";
+        String cipher = engine.convert(setting, plain);
+        CribSearch.Result result =
+            new Bombe(engine).search(cipher, plain, 0, POOL);
+        assertEquals(6 * 26 * 26, result.keys());
+        assertTrue(result.candidates().contains(setting));
+        assertTrue(result.candidates().size() < 6 * 26 * 26);
+    }
+
+    @Test
+    public void checkSelfEnciphered() {
+        Engine engine = new Engine(CribSearchTest.CONFIG);
+        CribSearch.Result result = new Bombe(engine)
+            .search("ABCDEF", "XCX", 1, ForkJoinPool.commonPool());
+        assertEquals(0, result.keys());
+        assertTrue(result.candidates().isEmpty());
+    }
+}
@@ -0,0 +1,31 @@
+package enigma;
+
+/** A converter of messages in bytes through the tables of a keystream
+ *  in blocks of characters, used by Machine when one is available.  The
+ *  implementation, VectorEngine, needs the incubating Vector API, so
+ *  Machine loads it by name and does without it if it is absent.
+ *  @author Christopher Lee
+ */
+interface ByteConverter {
+
+    /** Returns true iff I am worth using on this processor. */
+    boolean available();
+
+    /** Returns the number of characters I convert at a time. */
+    int blockSize();
+
+    /** Convert whole blocks of characters from MSG[START .. START+N-1],
+     *  each a character in ISO-8859-1, into OUT starting at
+     *  OUT[OUTSTART], stopping before the first block containing a
+     *  character whose entry in INDICES is negative (such as a space).
+     *  Character K of the run, for 0 <= K < N, becomes the one whose
+     *  alphabet index is its image in the substitution for step
+     *  FIRSTSTEP + K of a keystream whose tables for an alphabet of SIZE
+     *  characters are TABLES.  INDICES gives the alphabet index of each
+     *  byte value, and CHARS the character with each alphabet index.
+     *  Returns the number of characters converted, a multiple of
+     *  blockSize(). */
+    int convert(int[] tables, int size, int firstStep, byte[] msg,
+                int start, int n, byte[] out, int outStart, int[] indices,
+                int[] chars);
+}
@@ -0,0 +1,169 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.EnigmaException.*;
+
+/** The offsets in a ciphertext at which cribs may lie.  A machine whose
+ *  reflectors are derangements never encrypts a letter to itself, so a
+ *  crib cannot lie where any of its letters falls on the same letter of
+ *  the ciphertext.  The ciphertext is held as one bit set per letter,
+ *  with bit J set iff the ciphertext has that letter at J; the offsets
+ *  ruled out by a crib are then the union of the sets of its letters,
+ *  each shifted by the letter's position in the crib, computed 64
+ *  offsets at a time.
+ *  @author Christopher Lee
+ */
+class CribPlacement {
+
+    /** The placements of cribs in CIPHERTEXT, whose characters other
+     *  than spaces are in ALPHABET. */
+    CribPlacement(Alphabet alphabet, String ciphertext) {
+        _alphabet = alphabet;
+        int[] cipher = CribSearch.indices(alphabet, ciphertext);
+        _length = cipher.length;
+        _words = (_length + Long.SIZE - 1) >>> LOG_WORD;
+        _masks = new long[alphabet.size()][];
+        for (int j = 0; j < _length; j++) {
+            long[] mask = _masks[cipher[j]];
+            if (mask == null) {
+                mask = _masks[cipher[j]] = new long[_words + 1];
+            }
+            mask[j >>> LOG_WORD] |= 1L << j;
+        }
+        _admissible = ThreadLocal.withInitial(() -> new long[_words]);
+    }
+
+    /** Returns true iff no reflector available to MACHINE maps a letter
+     *  to itself, so that MACHINE never encrypts a letter to itself and
+     *  the offsets I rule out are impossible for it. */
+    static boolean applies(Machine machine) {
+        for (Rotor rotor : machine.getAllRotors()) {
+            if (rotor.reflecting() && !rotor.permutation().derangement()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the number of characters of the ciphertext, less
+     *  spaces. */
+    int length() {
+        return _length;
+    }
+
+    /** Returns the offsets in the ciphertext, in increasing order, at
+     *  which CRIB shares no letter with the ciphertext beneath it.
+     *  Spaces in CRIB are ignored, and offsets count the characters of
+     *  the ciphertext other than spaces. */
+    int[] offsets(String crib) {
+        long[] admissible = _admissible.get();
+        int words = admissible(letters(crib), admissible);
+        int count = 0;
+        for (int w = 0; w < words; w++) {
+            count += Long.bitCount(admissible[w]);
+        }
+        int[] result = new int[count];
+        int n = 0;
+        for (int w = 0; w < words; w++) {
+            for (long free = admissible[w]; free != 0; free &= free - 1) {
+                result[n] = (w << LOG_WORD) + Long.numberOfTrailingZeros(free);
+                n += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Find the admissible offsets of each of CRIBS on POOL, passing
+     *  them to SINK.  As the offsets of thousands of cribs in a long
+     *  ciphertext would not fit in memory together, SINK is given each
+     *  crib's offsets as a bit set in space that is reused once it
+     *  returns. */
+    void scan(List<String> cribs, ForkJoinPool pool, Sink sink) {
+        int[][] letters = new int[cribs.size()][];
+        for (int k = 0; k < letters.length; k++) {
+            letters[k] = letters(cribs.get(k));
+        }
+        pool.invoke(new ParallelRange(0, letters.length, k -> {
+            long[] admissible = _admissible.get();
+            sink.placed(k, admissible, admissible(letters[k], admissible));
+        }));
+    }
+
+    /** Returns the letters of CRIB, less spaces, as alphabet indices,
+     *  checking that there is at least one. */
+    private int[] letters(String crib) {
+        int[] result = CribSearch.indices(_alphabet, crib);
+        if (result.length == 0) {
+            throw error("empty crib");
+        }
+        return result;
+    }
+
+    /** A receiver of the admissible offsets of cribs. */
+    interface Sink {
+        /** Receive the offsets of crib number CRIB: offset K is admissible
+         *  iff K < 64 * WORDS and bit K % 64 of ADMISSIBLE[K / 64] is
+         *  set.  Called concurrently for different cribs. */
+        void placed(int crib, long[] admissible, int words);
+    }
+
+    /** Set bit K of ADMISSIBLE iff the crib whose letters are CRIB, as
+     *  alphabet indices, may lie at offset K.  CRIB must be non-empty.
+     *  Returns the number of words of ADMISSIBLE used, which is 0 if
+     *  CRIB is longer than the ciphertext. */
+    private int admissible(int[] crib, long[] admissible) {
+        int last = _length - crib.length;
+        if (last < 0) {
+            return 0;
+        }
+        int words = (last >>> LOG_WORD) + 1;
+        Arrays.fill(admissible, 0, words, 0);
+        for (int i = 0; i < crib.length; i++) {
+            long[] mask = _masks[crib[i]];
+            if (mask == null) {
+                continue;
+            }
+            int skip = i >>> LOG_WORD, shift = i & (Long.SIZE - 1);
+            if (shift == 0) {
+                for (int w = 0; w < words; w++) {
+                    admissible[w] |= mask[w + skip];
+                }
+            } else {
+                for (int w = 0; w < words; w++) {
+                    admissible[w] |= (mask[w + skip] >>> shift)
+                        | (mask[w + skip + 1] << -shift);
+                }
+            }
+        }
+        for (int w = 0; w < words; w++) {
+            admissible[w] = ~admissible[w];
+        }
+        int tail = (last + 1) & (Long.SIZE - 1);
+        if (tail != 0) {
+            admissible[words - 1] &= ~(-1L << tail);
+        }
+        return words;
+    }
+
+    /** Log base 2 of the number of bits in a long. */
+    private static final int LOG_WORD = 6;
+
+    /** The alphabet of the ciphertext. */
+    private final Alphabet _alphabet;
+
+    /** Number of characters in the ciphertext. */
+    private final int _length;
+
+    /** Number of words in a bit set of ciphertext positions. */
+    private final int _words;
+
+    /** _masks[C] is the set of positions of letter C in the ciphertext,
+     *  with a word of zeros after it, or null if C does not occur. */
+    private final long[][] _masks;
+
+    /** Space in which each thread collects the admissible offsets. */
+    private final ThreadLocal<long[]> _admissible;
+}
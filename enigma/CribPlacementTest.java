@@ -0,0 +1,135 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.AfterClass;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/** The suite of all JUnit tests for the CribPlacement class.
+ *  @author Christopher Lee
+ */
+public class CribPlacementTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Pool on which the tests run searches. */
+    private static final ForkJoinPool POOL = new ForkJoinPool(3);
+
+    /** Release the threads of POOL. */
+    @AfterClass
+    public static void shutDownPool() {
+        POOL.shutdown();
+    }
+
+    /** Returns a string of LENGTH characters drawn from "ABCD" by
+     *  RANDOM. */
+    private static String random(int length, Random random) {
+        char[] result = new char[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = "ABCD".charAt(random.nextInt(4));
+        }
+        return new String(result);
+    }
+
+    /** Returns the offsets at which CRIB shares no letter with CIPHER,
+     *  found one character at a time. */
+    private static int[] slowOffsets(String cipher, String crib) {
+        int[] result = new int[cipher.length() + 1];
+        int n = 0;
+        for (int k = 0; k + crib.length() <= cipher.length(); k++) {
+            int i = 0;
+            while (i < crib.length()
+                   && crib.charAt(i) != cipher.charAt(k + i)) {
+                i += 1;
+            }
+            if (i == crib.length()) {
+                result[n] = k;
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    @Test
+    public void checkOffsets() {
+        CribPlacement placement =
+            new CribPlacement(new Alphabet("ABCD"), "AB CDAB");
+        assertEquals(6, placement.length());
+        assertArrayEquals(new int[] {0, 1, 3, 4, 5}, placement.offsets("C"));
+        assertArrayEquals(new int[] {0, 1, 2, 4}, placement.offsets("DA"));
+        assertArrayEquals(new int[0], placement.offsets("DDDDDDD"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkEmptyCrib() {
+        String cipher = random(64, new Random(5));
+        new CribPlacement(new Alphabet("ABCD"), cipher).offsets(" ");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkEmptyCribInScan() {
+        CribPlacement placement =
+            new CribPlacement(new Alphabet("ABCD"), "ABCD");
+        placement.scan(Arrays.asList("AB", ""), ForkJoinPool.commonPool(),
+                       (crib, admissible, words) -> { });
+    }
+
+    @Test
+    public void checkAgainstSlowOffsets() {
+        Random random = new Random(3);
+        Alphabet alphabet = new Alphabet("ABCD");
+        for (int length : new int[] {1, 63, 64, 65, 200, 1000}) {
+            String cipher = random(length, random);
+            CribPlacement placement = new CribPlacement(alphabet, cipher);
+            for (int cribLength : new int[] {1, 2, 5, 63, 64, 65, 130}) {
+                String crib = random(cribLength, random).replace('D', 'C');
+                assertArrayEquals(slowOffsets(cipher, crib),
+                                  placement.offsets(crib));
+            }
+        }
+    }
+
+    @Test
+    public void checkManyCribs() {
+        Random random = new Random(4);
+        String cipher = random(5000, random);
+        CribPlacement placement =
+            new CribPlacement(new Alphabet("ABCD"), cipher);
+        String[] cribs = new String[100];
+        for (int k = 0; k < cribs.length; k++) {
+            cribs[k] = random(1 + k % 7, random);
+        }
+        int[][] offsets = new int[cribs.length][];
+        placement.scan(Arrays.asList(cribs), POOL,
+                       (crib, admissible, words) -> {
+                int[] result = new int[Long.SIZE * words];
+                int n = 0;
+                for (int k = 0; k < result.length; k++) {
+                    if ((admissible[k / Long.SIZE] & (1L << k)) != 0) {
+                        result[n] = k;
+                        n += 1;
+                    }
+                }
+                offsets[crib] = Arrays.copyOf(result, n);
+            });
+        for (int k = 0; k < cribs.length; k++) {
+            assertArrayEquals(slowOffsets(cipher, cribs[k]), offsets[k]);
+        }
+    }
+
+    @Test
+    public void checkApplies() {
+        Engine engine = new Engine(CribSearchTest.CONFIG);
+        assertTrue(CribPlacement.applies(engine.newMachine()));
+        Engine fixedPoint = new Engine(
+            "ABCD\n 2 1\n I MA (ABCD)\n B R (AB) (C) (D)\n");
+        assertFalse(CribPlacement.applies(fixedPoint.newMachine()));
+    }
+}
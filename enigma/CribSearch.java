@@ -0,0 +1,290 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A known-plaintext attack: a search of every rotor order and starting
+ *  position allowed by a configuration for those under which part of a
+ *  ciphertext decrypts to a given crib.  The plugboard is taken as known
+ *  (usually empty).  Each key is rejected at the first crib letter that
+ *  does not match, and the keys are tried concurrently, each thread
+ *  reusing one machine, so that trying a key allocates nothing except
+ *  when the rotors other than the rightmost are at positions whose
+ *  combined table is not cached.
+ *  @author Christopher Lee
+ */
+class CribSearch {
+
+    /** A search among the rotors configured in ENGINE, with the plugboard
+     *  whose cycles are PLUGBOARD. */
+    CribSearch(Engine engine, String plugboard) {
+        _engine = engine;
+        _alphabet = engine.alphabet();
+        _plugboard = plugboard.trim();
+        _plugPerm = new Permutation(_plugboard, _alphabet);
+        _machines = ThreadLocal.withInitial(() -> {
+            Machine machine = _engine.newMachine();
+            machine.setPlugboard(_plugPerm);
+            return machine;
+        });
+        _orders = rotorOrders(engine.newMachine());
+    }
+
+    /** Returns the number of rotor orders I search. */
+    int numOrders() {
+        return _orders.size();
+    }
+
+    /** Returns the settings (rotor order and positions at the start of
+     *  CIPHERTEXT) under which CIPHERTEXT[OFFSET ..] decrypts to CRIB,
+     *  searching on POOL.  Spaces in CIPHERTEXT and CRIB are ignored, and
+     *  OFFSET counts the other characters. */
+    Result search(String ciphertext, String crib, int offset,
+                  ForkJoinPool pool) {
+        int[] cipher = indices(_alphabet, ciphertext);
+        int[] plain = indices(_alphabet, crib);
+        if (offset < 0 || offset + plain.length > cipher.length) {
+            throw error("crib does not fit in the ciphertext at %d", offset);
+        }
+        int[] target = new int[plain.length];
+        int[] source = new int[plain.length];
+        for (int i = 0; i < plain.length; i++) {
+            source[i] = cipher[offset + i];
+            target[i] = plain[i];
+        }
+        ConcurrentLinkedQueue<String> found = new ConcurrentLinkedQueue<>();
+        LongAdder keys = new LongAdder();
+        long start = System.nanoTime();
+        int size = _alphabet.size();
+        if ((long) _orders.size() * size > Integer.MAX_VALUE) {
+            throw error("too many rotor orders to search");
+        }
+        if (!selfEnciphered(source, target)) {
+            pool.invoke(new ParallelRange(0, _orders.size() * size, task -> {
+                int[] order = _orders.get(task / size);
+                keys.add(searchTask(order, task % size, offset, source,
+                                    target, found));
+            }));
+        }
+        return new Result(new ArrayList<>(found), keys.sum(),
+                          System.nanoTime() - start);
+    }
+
+    /** Returns true iff some SOURCE[I] == TARGET[I]: an Enigma never
+     *  encrypts a letter to itself, so no key can then match. */
+    static boolean selfEnciphered(int[] source, int[] target) {
+        for (int i = 0; i < source.length; i++) {
+            if (source[i] == target[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Try every key with rotor order ORDER in which the leftmost rotor
+     *  after the reflector is at position FIRST, recording in FOUND those
+     *  under which the characters SOURCE, starting OFFSET characters into
+     *  the message, convert to TARGET.  Returns the number of keys
+     *  tried. */
+    private long searchTask(int[] order, int first, int offset,
+                            int[] source, int[] target,
+                            ConcurrentLinkedQueue<String> found) {
+        Machine machine = _machines.get();
+        machine.insertRotors(order);
+        int size = _alphabet.size();
+        long perFirst = 1;
+        for (int i = 2; i < order.length; i++) {
+            perFirst *= size;
+        }
+        long base = first * perFirst;
+        for (long key = base; key < base + perFirst; key++) {
+            machine.setPositionKey(key);
+            machine.advance(offset);
+            int i = 0;
+            while (i < source.length
+                   && machine.convert(source[i]) == target[i]) {
+                i += 1;
+            }
+            if (i == source.length) {
+                found.add(settingLine(machine, key, _plugboard));
+            }
+        }
+        return perFirst;
+    }
+
+    /** Returns the setting line for MACHINE with its current rotors at
+     *  starting positions KEY, as from Machine.positionKey, and the
+     *  plugboard whose cycles are PLUGBOARD.  Leaves MACHINE at those
+     *  positions. */
+    static String settingLine(Machine machine, long key, String plugboard) {
+        machine.setPositionKey(key);
+        StringBuilder line = new StringBuilder("*");
+        for (Rotor rotor : machine.getRotors()) {
+            line.append(' ').append(rotor.name());
+        }
+        line.append(' ');
+        for (int i = 1; i < machine.numRotors(); i++) {
+            line.append(machine.getAlphabet().toChar(machine.setting(i)));
+        }
+        if (!plugboard.isEmpty()) {
+            line.append(' ').append(plugboard);
+        }
+        return line.toString();
+    }
+
+    /** Returns the indices in ALPHABET of the characters of TEXT other
+     *  than spaces. */
+    static int[] indices(Alphabet alphabet, String text) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ' ') {
+                continue;
+            }
+            result[n] = alphabet.toInt(c);
+            if (result[n] < 0) {
+                throw error("'%c' is not in the alphabet", c);
+            }
+            n += 1;
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Returns every legal rotor order for MACHINE, as indices in its
+     *  getAllRotors(): a reflector, then distinct non-moving rotors, then
+     *  distinct moving rotors in the rightmost numPawls() slots. */
+    static List<int[]> rotorOrders(Machine machine) {
+        ArrayList<Rotor> all = new ArrayList<>(machine.getAllRotors());
+        List<int[]> result = new ArrayList<>();
+        fillOrders(all, machine.numRotors() - machine.numPawls(),
+                   new int[machine.numRotors()], 0,
+                   new boolean[all.size()], result);
+        return result;
+    }
+
+    /** Add to RESULT each completion of ORDER[0 .. K-1] to a legal rotor
+     *  order drawn from ALL, in which the first FIXED slots hold
+     *  non-moving rotors.  USED marks the rotors in ORDER[0 .. K-1]. */
+    private static void fillOrders(List<Rotor> all, int fixed, int[] order,
+                                   int k, boolean[] used, List<int[]> result) {
+        if (k == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        for (int r = 0; r < all.size(); r++) {
+            Rotor rotor = all.get(r);
+            boolean fits = k == 0 ? rotor.reflecting()
+                : !rotor.reflecting() && rotor.rotates() == (k >= fixed);
+            if (fits && !used[r]) {
+                used[r] = true;
+                order[k] = r;
+                fillOrders(all, fixed, order, k + 1, used, result);
+                used[r] = false;
+            }
+        }
+    }
+
+    /** The outcome of a search. */
+    static class Result {
+        /** A result with candidate setting lines CANDIDATES, found by
+         *  trying KEYS keys in NANOS ns. */
+        Result(List<String> candidates, long keys, long nanos) {
+            _candidates = candidates;
+            _keys = keys;
+            _nanos = nanos;
+        }
+
+        /** Returns the setting lines under which the crib matched. */
+        List<String> candidates() {
+            return _candidates;
+        }
+
+        /** Returns the number of keys tried. */
+        long keys() {
+            return _keys;
+        }
+
+        /** Returns the number of keys tried per second. */
+        double keysPerSecond() {
+            return _nanos <= 0 ? 0 : _keys * NANOS_PER_SECOND / _nanos;
+        }
+
+        /** Setting lines under which the crib matched. */
+        private final List<String> _candidates;
+        /** Number of keys tried. */
+        private final long _keys;
+        /** Time taken, in nanoseconds. */
+        private final long _nanos;
+    }
+
+    /** Search for the crib given by ARGS: the name of a configuration
+     *  file, the ciphertext, the crib, the number of ciphertext characters
+     *  preceding the crib, and optionally the cycles of the plugboard.
+     *  Prints the candidate setting lines and the rate of search. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 4 || args.length > 5) {
+                throw error("Usage: java enigma.CribSearch CONFIG CIPHERTEXT "
+                            + "CRIB OFFSET [PLUGBOARD]");
+            }
+            String config = new String(
+                Files.readAllBytes(new File(args[0]).toPath()),
+                Charset.defaultCharset());
+            int offset;
+            try {
+                offset = Integer.parseInt(args[3]);
+            } catch (NumberFormatException excp) {
+                throw error("bad offset: %s", args[3]);
+            }
+            CribSearch search = new CribSearch(new Engine(config),
+                                               args.length > 4 ? args[4] : "");
+            Result result = search.search(args[1], args[2], offset,
+                                          ForkJoinPool.commonPool());
+            for (String candidate : result.candidates()) {
+                System.out.println(candidate);
+            }
+            System.err.printf("%d keys in %d rotor orders, %.0f keys/s, "
+                              + "%d candidates%n", result.keys(),
+                              search.numOrders(), result.keysPerSecond(),
+                              result.candidates().size());
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: could not read %s%n", args[0]);
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /** The configuration searched. */
+    private final Engine _engine;
+
+    /** The alphabet of _engine. */
+    private final Alphabet _alphabet;
+
+    /** Cycles of the plugboard, as given. */
+    private final String _plugboard;
+
+    /** The plugboard. */
+    private final Permutation _plugPerm;
+
+    /** All legal rotor orders, as indices of available rotors. */
+    private final List<int[]> _orders;
+
+    /** Machine used by each thread, with the plugboard set. */
+    private final ThreadLocal<Machine> _machines;
+}
@@ -0,0 +1,70 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.AfterClass;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+/** The suite of all JUnit tests for the CribSearch class.
+ *  @author Christopher Lee
+ */
+public class CribSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Pool on which the tests run searches. */
+    private static final ForkJoinPool POOL = new ForkJoinPool(2);
+
+    /** Release the threads of POOL. */
+    @AfterClass
+    public static void shutDownPool() {
+        POOL.shutdown();
+    }
+
+    /** A small configuration: 6 rotor orders and 676 positions each. */
+    static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n"
+        + " 3 2\n"
+        + " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME     (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "           (RX) (SZ) (TV)\n";
+
+    @Test
+    public void checkRotorOrders() {
+        Engine engine = new Engine(CONFIG);
+        assertEquals(6, CribSearch.rotorOrders(engine.newMachine()).size());
+    }
+
+    @Test
+    public void checkFindsKey() {
+        Engine engine = new Engine(CONFIG);
+        String setting = "* B III I QD (AT) (KM)";
+        String plain = "ATTACKATDAWNONTHEEASTERNFRONT";
+        String cipher = engine.convert(setting, plain);
+        CribSearch search = new CribSearch(engine, "(AT) (KM)");
+        CribSearch.Result result =
+            search.search(cipher, "DAWNONTHEEAST", 8, POOL);
+        assertEquals(6 * 26 * 26, result.keys());
+        assertTrue(result.candidates().contains(setting));
+        for (String candidate : result.candidates()) {
+            assertEquals("DAWNONTHEEAST",
+                         engine.convert(candidate, cipher).substring(8, 21));
+        }
+    }
+
+    @Test
+    public void checkSelfEnciphered() {
+        Engine engine = new Engine(CONFIG);
+        CribSearch.Result result = new CribSearch(engine, "")
+            .search("ABCDEF", "XCX", 1, ForkJoinPool.commonPool());
+        assertEquals(0, result.keys());
+        assertTrue(result.candidates().isEmpty());
+    }
+}
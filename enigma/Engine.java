@@ -0,0 +1,300 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** An Enigma configuration: an alphabet, a number of rotor slots and
+ *  pawls, and a set of available rotors, read once from a configuration
+ *  file.  An Engine is not changed after it is constructed, apart from its
+ *  synchronized cache of parsed setting lines, so one Engine may be shared
+ *  by any number of threads, each taking its own machines from it.  The
+ *  machines share the engine's immutable rotor tables.
+ *  @author Christopher Lee
+ */
+class Engine {
+
+    /** An engine configured from CONFIG, the contents of a configuration
+     *  file. */
+    Engine(String config) {
+        _prototype = readConfig(new Tokenizer(config, "configuration",
+                                              true));
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _prototype.getAlphabet();
+    }
+
+    /** Return a new machine with my configuration, with no rotors
+     *  inserted yet. */
+    Machine newMachine() {
+        return new Machine(_prototype);
+    }
+
+    /** Return a new machine with my configuration, set up according to
+     *  the setting line SETTINGS. */
+    Machine machine(String settings) {
+        Machine result = newMachine();
+        setUp(result, settings);
+        return result;
+    }
+
+    /** Return the conversion of MSG by a new machine set up according to
+     *  the setting line SETTINGS, so that the result depends on nothing
+     *  else, not even on rotor positions SETTINGS leaves unset. */
+    String convert(String settings, String msg) {
+        return machine(settings).convert(msg);
+    }
+
+    /** Set M, a machine from this engine, according to the setting line
+     *  SETTINGS, and check that the result is a legal configuration.  The
+     *  most recently used setting lines are kept parsed and checked, so
+     *  that applying one again only resets the machine. */
+    void setUp(Machine M, String settings) {
+        String key = normalize(settings);
+        Setting setting;
+        synchronized (_settings) {
+            setting = _settings.get(key);
+            if (setting == null) {
+                _settingMisses += 1;
+            } else {
+                _settingHits += 1;
+            }
+        }
+        if (setting != null) {
+            setting.apply(M);
+            return;
+        }
+        setting = parseSetting(M.getAlphabet(), settings);
+        setting.apply(M);
+        check(M);
+        synchronized (_settings) {
+            _settings.put(key, setting);
+        }
+    }
+
+    /** Returns the number of calls of setUp that found their setting line
+     *  already parsed. */
+    long settingHits() {
+        synchronized (_settings) {
+            return _settingHits;
+        }
+    }
+
+    /** Returns the number of calls of setUp that had to parse their
+     *  setting line. */
+    long settingMisses() {
+        synchronized (_settings) {
+            return _settingMisses;
+        }
+    }
+
+    /** Check that the rotors inserted in M are a legal configuration. */
+    private void check(Machine M) {
+        if (!M.getRotors().get(0).reflecting()) {
+            throw error("First rotor is not a reflector");
+        }
+        int numMoving = 0;
+        for (int i = 0; i < M.numRotors(); i++) {
+            if (M.getRotors().get(i).rotates()) {
+                numMoving += 1;
+            }
+        }
+        if (numMoving != M.numPawls()) {
+            throw error("Wrong number of moving rotors");
+        }
+    }
+
+    /** Return an Enigma machine configured from the configuration file
+     *  read by CONFIG. */
+    private Machine readConfig(Tokenizer config) {
+        Alphabet alphabet = readAlphabet(config);
+        int numRotors = config.integer("number of rotor slots");
+        if (numRotors < 2) {
+            throw config.error("a machine needs at least 2 rotor slots");
+        }
+        int numPawls = config.integer("number of pawls");
+        if (numPawls >= numRotors) {
+            throw config.error("too many pawls for %d rotor slots",
+                               numRotors);
+        }
+        ArrayList<Rotor> allRotors = new ArrayList<>();
+        StringBuilder cycles = new StringBuilder();
+        while (!config.atEnd()) {
+            allRotors.add(readRotor(config, alphabet, cycles));
+        }
+        return new Machine(alphabet, numRotors, numPawls, allRotors);
+    }
+
+    /** Return the alphabet on the first line of CONFIG, which must be
+     *  distinct characters other than whitespace, parentheses and '*'. */
+    private Alphabet readAlphabet(Tokenizer config) {
+        String chars = config.restOfLine();
+        if (chars.isEmpty()) {
+            throw config.error("missing alphabet");
+        }
+        Alphabet alphabet = new Alphabet(chars);
+        for (int i = 0; i < chars.length(); i++) {
+            char c = chars.charAt(i);
+            if (Character.isWhitespace(c) || c == '(' || c == ')'
+                || c == '*') {
+                throw config.error("bad character in alphabet: '%c'", c);
+            }
+            if (alphabet.toInt(c) != i) {
+                throw config.error("character '%c' repeated in alphabet", c);
+            }
+        }
+        return alphabet;
+    }
+
+    /** Return a rotor whose description is the next thing read by CONFIG:
+     *  a name, a type (M followed by the notches, N or R), and cycles of
+     *  characters in ALPHABET.  CYCLES is used to collect the cycles. */
+    private Rotor readRotor(Tokenizer config, Alphabet alphabet,
+                            StringBuilder cycles) {
+        String name = config.word("rotor name");
+        String typeNotch = config.word("rotor type");
+        char type = typeNotch.charAt(0);
+        if (type == 'M') {
+            for (int i = 1; i < typeNotch.length(); i++) {
+                if (!alphabet.contains(typeNotch.charAt(i))) {
+                    throw config.error("notch '%c' is not in the alphabet",
+                                       typeNotch.charAt(i));
+                }
+            }
+        } else if ((type != 'N' && type != 'R') || typeNotch.length() > 1) {
+            throw config.error("bad type for rotor %s: %s", name, typeNotch);
+        }
+        cycles.setLength(0);
+        while (config.atCycle()) {
+            config.cycle(alphabet, cycles);
+        }
+        Permutation perm = new Permutation(cycles.toString(), alphabet);
+        if (type == 'M') {
+            return new MovingRotor(name, perm, typeNotch.substring(1));
+        } else if (type == 'N') {
+            return new FixedRotor(name, perm);
+        } else {
+            return new Reflector(name, perm);
+        }
+    }
+
+    /** Returns SETTINGS with surrounding whitespace removed and each run
+     *  of whitespace within it replaced by a single space. */
+    private static String normalize(String settings) {
+        String trimmed = settings.trim();
+        boolean normal = true;
+        for (int i = 0; i < trimmed.length() && normal; i++) {
+            char c = trimmed.charAt(i);
+            normal = !Character.isWhitespace(c)
+                || (c == ' ' && !Character.isWhitespace(trimmed.charAt(i + 1)));
+        }
+        if (normal) {
+            return trimmed;
+        }
+        StringBuilder result = new StringBuilder(trimmed.length());
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                result.append(c);
+            } else if (!Character.isWhitespace(trimmed.charAt(i - 1))) {
+                result.append(' ');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Returns the setting given by SETTINGS, which must have the format
+     *  specified in the assignment: '*', the names of the rotors,
+     *  optionally their settings, and the cycles of the plugboard, whose
+     *  characters are in ALPHABET. */
+    private Setting parseSetting(Alphabet alphabet, String settings) {
+        Tokenizer line = new Tokenizer(settings, "setting line", false);
+        line.expect('*');
+        int[] rotors = new int[_prototype.numRotors()];
+        for (int i = 0; i < rotors.length; i++) {
+            if (line.atEnd() || line.atCycle()) {
+                throw line.error("setting line does not name enough rotors");
+            }
+            rotors[i] = _prototype.rotorIndex(line.word("rotor name"));
+        }
+        int[] positions = new int[0];
+        if (!line.atEnd() && !line.atCycle()) {
+            String setting = line.word("rotor settings");
+            if (setting.length() > rotors.length - 1) {
+                throw line.error("too many rotor settings: %s", setting);
+            }
+            line.checkWord(alphabet);
+            positions = new int[setting.length()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = alphabet.toInt(setting.charAt(i));
+            }
+        }
+        StringBuilder plugboard = new StringBuilder();
+        while (!line.atEnd()) {
+            if (!line.atCycle()) {
+                throw line.error("Incorrect plugboard input");
+            }
+            line.cycle(alphabet, plugboard);
+        }
+        return new Setting(rotors,
+                           new Permutation(plugboard.toString(), alphabet),
+                           positions);
+    }
+
+    /** A parsed setting line. */
+    private static class Setting {
+        /** A setting inserting the rotors whose indices among the available
+         *  rotors are ROTORS, with the plugboard PLUGBOARD, and setting
+         *  the rotors after the reflector to POSITIONS, given as alphabet
+         *  indices.  Neither array may be changed afterwards. */
+        Setting(int[] rotors, Permutation plugboard, int[] positions) {
+            this.rotors = rotors;
+            this.plugboard = plugboard;
+            this.positions = positions;
+        }
+
+        /** Set M according to me. */
+        void apply(Machine M) {
+            M.insertRotors(rotors);
+            M.setPlugboard(plugboard);
+            M.setRotors(positions);
+        }
+
+        /** Indices of the rotors among those available, the reflector
+         *  first. */
+        private final int[] rotors;
+        /** The plugboard, which is never changed. */
+        private final Permutation plugboard;
+        /** Initial positions of the leading rotors after the reflector,
+         *  as alphabet indices; the others keep their positions. */
+        private final int[] positions;
+    }
+
+    /** A machine with my configuration and no rotors inserted, which is
+     *  only ever copied. */
+    private final Machine _prototype;
+
+    /** The most recently used setting lines, parsed, keyed by their
+     *  normalized text. */
+    private final LinkedHashMap<String, Setting> _settings =
+        new LinkedHashMap<String, Setting>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Setting> e) {
+                return size() > SETTING_CACHE_SIZE;
+            }
+        };
+
+    /** Number of calls of setUp that found their setting in _settings. */
+    private long _settingHits;
+
+    /** Number of calls of setUp that did not. */
+    private long _settingMisses;
+
+    /** Number of setting lines kept in _settings. */
+    private static final int SETTING_CACHE_SIZE = 256;
+}
@@ -0,0 +1,122 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** The suite of all JUnit tests for the Engine class.
+ *  @author Christopher Lee
+ */
+public class EngineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** A configuration with the naval rotors used in the examples. */
+    static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n"
+        + " 5 3\n"
+        + " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME     (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " IV MJ     (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+        + " Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " Gamma N   (AFNIRLBSQWVXGUZDKMTPCOYJHE)\n"
+        + " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "           (RX) (SZ) (TV)\n";
+
+    /** Setting line of the example messages. */
+    static final String SETTING = "* B Beta I II III AAAA (AQ) (EP)";
+
+    @Test
+    public void checkMachine() {
+        Engine engine = new Engine(CONFIG);
+        assertEquals(26, engine.alphabet().size());
+        assertEquals("IHBDQQMTQZ",
+                     engine.machine(SETTING).convert("HELLO WORLD"));
+        assertEquals("HELLOWORLD", engine.convert(SETTING, "IHBDQQMTQZ"));
+    }
+
+    @Test
+    public void checkMachinesIndependent() {
+        Engine engine = new Engine(CONFIG);
+        Machine first = engine.machine(SETTING);
+        Machine second = engine.machine(SETTING);
+        assertEquals("IHBDQ", first.convert("HELLO"));
+        assertEquals("IHBDQ", second.convert("HELLO"));
+        assertEquals("QMTQZ", first.convert("WORLD"));
+    }
+
+    @Test
+    public void checkConcurrentUse() throws Exception {
+        Engine engine = new Engine(CONFIG);
+        String plain = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        String expected = engine.convert(SETTING, plain);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            results.add(pool.submit(() -> engine.convert(SETTING, plain)));
+        }
+        for (Future<String> result : results) {
+            assertEquals(expected, result.get());
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void checkConvertIgnoresEarlierRequests() {
+        Engine engine = new Engine(CONFIG);
+        String partial = "* B Beta I II III A";
+        String expected = new Engine(CONFIG).convert(partial, "HELLOWORLD");
+        engine.convert("* B Beta III I II QRST", "HELLO");
+        engine.convert("* B Beta I II III ZZZZ", "HELLOWORLD");
+        assertEquals(expected, engine.convert(partial, "HELLOWORLD"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkBadSetting() {
+        Engine engine = new Engine(CONFIG);
+        engine.machine("* Beta B I II III AAAA");
+    }
+
+    @Test
+    public void checkErrorPositions() {
+        try {
+            new Engine(CONFIG.replace("(HIX)", "(HI?)"));
+            fail("bad configuration accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("configuration, line 7, column 41: "
+                         + "character '?' is not in the alphabet",
+                         excp.getMessage());
+        }
+        Engine engine = new Engine(CONFIG);
+        try {
+            engine.machine("* B Beta I II III AAAA (AQ) EP");
+            fail("bad setting accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("setting line, column 29: Incorrect plugboard input",
+                         excp.getMessage());
+        }
+    }
+
+    @Test
+    public void checkSettingCache() {
+        Engine engine = new Engine(CONFIG);
+        Machine machine = engine.newMachine();
+        engine.setUp(machine, SETTING);
+        assertEquals("IHBDQ", machine.convert("HELLO"));
+        engine.setUp(machine, "*  B Beta I II III\tAAAA (AQ) (EP) ");
+        assertEquals("IHBDQ", machine.convert("HELLO"));
+        engine.setUp(machine, "* B Beta I II III AAAB (AQ) (EP)");
+        assertEquals(1, engine.settingHits());
+        assertEquals(2, engine.settingMisses());
+    }
+}
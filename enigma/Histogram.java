@@ -0,0 +1,86 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** A thread-safe histogram of non-negative values, such as latencies in
+ *  nanoseconds, with one bucket per power of two, so that recording is
+ *  cheap and the quantiles are exact to within a factor of two.
+ *  @author Christopher Lee
+ */
+class Histogram {
+
+    /** Record VALUE, treating a negative VALUE as 0. */
+    void record(long value) {
+        _counts.incrementAndGet(bucket(Math.max(0, value)));
+    }
+
+    /** Returns the number of values recorded. */
+    long count() {
+        long result = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            result += _counts.get(i);
+        }
+        return result;
+    }
+
+    /** Returns the numbers of values recorded in each bucket: element K
+     *  counts the values V with 2**K <= V + 1 < 2**(K+1). */
+    long[] counts() {
+        long[] result = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            result[i] = _counts.get(i);
+        }
+        return result;
+    }
+
+    /** Returns an upper bound on the Q-quantile (0 <= Q <= 1) of the
+     *  values recorded: the largest value in the bucket holding it.
+     *  Returns 0 if nothing has been recorded. */
+    long quantile(double q) {
+        long[] counts = counts();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen > 0 && seen >= rank) {
+                return i == BUCKETS - 1 ? Long.MAX_VALUE : (2L << i) - 2;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns a summary of my contents, for values in nanoseconds. */
+    String summary() {
+        return String.format("n=%d p50<=%dus p99<=%dus max<=%dus", count(),
+                             micros(quantile(MEDIAN)), micros(quantile(P99)),
+                             micros(quantile(1.0)));
+    }
+
+    /** Returns the bucket holding VALUE. */
+    private static int bucket(long value) {
+        long v = Math.min(value, Long.MAX_VALUE - 1) + 1;
+        return Long.SIZE - 1 - Long.numberOfLeadingZeros(v);
+    }
+
+    /** Returns NANOS in whole microseconds, rounded up. */
+    private static long micros(long nanos) {
+        return nanos == Long.MAX_VALUE ? nanos : (nanos + NANOS - 1) / NANOS;
+    }
+
+    /** Number of buckets: one for each power of two up to the largest
+     *  long. */
+    private static final int BUCKETS = Long.SIZE - 1;
+
+    /** Quantiles shown in summaries. */
+    private static final double MEDIAN = 0.5, P99 = 0.99;
+
+    /** Nanoseconds per microsecond. */
+    private static final long NANOS = 1000;
+
+    /** The counts of each bucket. */
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+}
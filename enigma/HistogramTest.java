@@ -0,0 +1,87 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Histogram class.
+ *  @author Christopher Lee
+ */
+public class HistogramTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Returns the bucket in which HISTOGRAM holds its only value. */
+    private static int onlyBucket(Histogram histogram) {
+        long[] counts = histogram.counts();
+        int result = -1;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                assertEquals(-1, result);
+                assertEquals(1, counts[i]);
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the bucket of VALUE in a fresh histogram. */
+    private static int bucketOf(long value) {
+        Histogram histogram = new Histogram();
+        histogram.record(value);
+        return onlyBucket(histogram);
+    }
+
+    @Test
+    public void checkBuckets() {
+        assertEquals(63, new Histogram().counts().length);
+        assertEquals(0, bucketOf(0));
+        assertEquals(0, bucketOf(-5));
+        assertEquals(1, bucketOf(1));
+        assertEquals(1, bucketOf(2));
+        assertEquals(2, bucketOf(3));
+        assertEquals(2, bucketOf(4));
+        assertEquals(2, bucketOf(6));
+        assertEquals(3, bucketOf(7));
+        assertEquals(10, bucketOf(1023));
+        assertEquals(9, bucketOf(1022));
+        assertEquals(62, bucketOf(1L << 62));
+        assertEquals(61, bucketOf((1L << 62) - 2));
+        assertEquals(62, bucketOf(Long.MAX_VALUE - 1));
+        assertEquals(62, bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void checkCountAndQuantiles() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.quantile(0.5));
+        for (int i = 0; i < 90; i++) {
+            histogram.record(0);
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.record(5);
+        }
+        histogram.record(1000);
+        assertEquals(100, histogram.count());
+        assertEquals(0, histogram.quantile(0.0));
+        assertEquals(0, histogram.quantile(0.5));
+        assertEquals(0, histogram.quantile(0.9));
+        assertEquals(6, histogram.quantile(0.91));
+        assertEquals(6, histogram.quantile(0.99));
+        assertEquals(1022, histogram.quantile(1.0));
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.quantile(1.0));
+    }
+
+    @Test
+    public void checkSummary() {
+        Histogram histogram = new Histogram();
+        histogram.record(1500);
+        histogram.record(1500);
+        assertEquals("n=2 p50<=3us p99<=3us max<=3us", histogram.summary());
+    }
+}
@@ -0,0 +1,198 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only attack: a search of every rotor order and starting
+ *  position allowed by a configuration for those under which a
+ *  ciphertext, decrypted without a plugboard, has the highest index of
+ *  coincidence (the chance that two of its letters drawn at random are
+ *  the same).  Natural language scores well above random text, and the
+ *  plugboard disturbs the score less than a wrong rotor setting does, so
+ *  the right rotor setting is usually among the best few; the plugboard
+ *  can then be sought with the rotors fixed.  Each thread reuses one
+ *  machine and one table of letter counts, and a decryption is scored
+ *  as it is made, so scoring a key allocates nothing.
+ *  @author Christopher Lee
+ */
+class IocSearch {
+
+    /** A search among the rotors configured in ENGINE. */
+    IocSearch(Engine engine) {
+        _engine = engine;
+        _alphabet = engine.alphabet();
+        Permutation unplugged = new Permutation("", _alphabet);
+        _machines = ThreadLocal.withInitial(() -> {
+            Machine machine = _engine.newMachine();
+            machine.setPlugboard(unplugged);
+            return machine;
+        });
+        _counts = ThreadLocal.withInitial(() -> new int[_alphabet.size()]);
+        _orders = CribSearch.rotorOrders(engine.newMachine());
+    }
+
+    /** Returns the number of rotor orders I search. */
+    int numOrders() {
+        return _orders.size();
+    }
+
+    /** Returns the COUNT settings (rotor order and positions at the start
+     *  of CIPHERTEXT, with no plugboard) under which CIPHERTEXT decrypts
+     *  to text with the highest index of coincidence, best first,
+     *  searching on POOL.  Spaces in CIPHERTEXT are ignored. */
+    CribSearch.Result search(String ciphertext, int count, ForkJoinPool pool) {
+        int[] cipher = CribSearch.indices(_alphabet, ciphertext);
+        if (cipher.length < 2) {
+            throw error("ciphertext too short to score");
+        }
+        TopK<Key> best = new TopK<>(count);
+        LongAdder keys = new LongAdder();
+        long start = System.nanoTime();
+        int size = _alphabet.size();
+        if ((long) _orders.size() * size > Integer.MAX_VALUE) {
+            throw error("too many rotor orders to search");
+        }
+        pool.invoke(new ParallelRange(0, _orders.size() * size, task -> {
+            keys.add(searchTask(task / size, task % size, cipher, best));
+        }));
+        List<String> candidates = new ArrayList<>();
+        Machine machine = _machines.get();
+        for (TopK.Entry<Key> entry : best.entries()) {
+            machine.insertRotors(_orders.get(entry.value()._order));
+            candidates.add(CribSearch.settingLine(machine,
+                                                  entry.value()._position,
+                                                  ""));
+        }
+        return new CribSearch.Result(candidates, keys.sum(),
+                                     System.nanoTime() - start);
+    }
+
+    /** Score every key with rotor order number ORDER in which the
+     *  leftmost rotor after the reflector is at position FIRST by the
+     *  index of coincidence of CIPHER decrypted under it, offering each
+     *  to BEST.  Returns the number of keys tried. */
+    private long searchTask(int order, int first, int[] cipher,
+                            TopK<Key> best) {
+        Machine machine = _machines.get();
+        int[] slots = _orders.get(order);
+        machine.insertRotors(slots);
+        int size = _alphabet.size();
+        long perFirst = 1;
+        for (int i = 2; i < slots.length; i++) {
+            perFirst *= size;
+        }
+        int[] counts = _counts.get();
+        double total = (double) cipher.length * (cipher.length - 1);
+        long base = first * perFirst;
+        for (long key = base; key < base + perFirst; key++) {
+            machine.setPositionKey(key);
+            long pairs = 0;
+            for (int c : cipher) {
+                pairs += counts[machine.convert(c)]++;
+            }
+            Arrays.fill(counts, 0);
+            double score = 2 * pairs / total;
+            if (best.admits(score)) {
+                best.offer(score, new Key(order, key));
+            }
+        }
+        return perFirst;
+    }
+
+    /** Returns the index of coincidence of the characters of TEXT other
+     *  than spaces, which are in ALPHABET. */
+    static double indexOfCoincidence(Alphabet alphabet, String text) {
+        int[] letters = CribSearch.indices(alphabet, text);
+        int[] counts = new int[alphabet.size()];
+        long pairs = 0;
+        for (int c : letters) {
+            pairs += counts[c]++;
+        }
+        return 2.0 * pairs / ((double) letters.length * (letters.length - 1));
+    }
+
+    /** A rotor order and starting positions. */
+    private static class Key {
+        /** The key with rotor order number ORDER and starting positions
+         *  POSITION, as from Machine.positionKey. */
+        Key(int order, long position) {
+            _order = order;
+            _position = position;
+        }
+
+        /** Index of the rotor order in _orders. */
+        private final int _order;
+        /** Starting positions. */
+        private final long _position;
+    }
+
+    /** Search for the settings given by ARGS: the name of a configuration
+     *  file, the ciphertext, and optionally the number of settings to
+     *  report (by default, DEFAULT_COUNT).  Prints the best settings with
+     *  their scores, and the rate of search. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2 || args.length > 3) {
+                throw error("Usage: java enigma.IocSearch CONFIG CIPHERTEXT "
+                            + "[COUNT]");
+            }
+            String config = new String(
+                Files.readAllBytes(new File(args[0]).toPath()),
+                Charset.defaultCharset());
+            int count = DEFAULT_COUNT;
+            if (args.length > 2) {
+                try {
+                    count = Integer.parseInt(args[2]);
+                } catch (NumberFormatException excp) {
+                    throw error("bad count: %s", args[2]);
+                }
+            }
+            Engine engine = new Engine(config);
+            IocSearch search = new IocSearch(engine);
+            CribSearch.Result result =
+                search.search(args[1], count, ForkJoinPool.commonPool());
+            for (String candidate : result.candidates()) {
+                double score = indexOfCoincidence(
+                    engine.alphabet(), engine.convert(candidate, args[1]));
+                System.out.printf("%.5f %s%n", score, candidate);
+            }
+            System.err.printf("%d keys in %d rotor orders, %.0f keys/s%n",
+                              result.keys(), search.numOrders(),
+                              result.keysPerSecond());
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: could not read %s%n", args[0]);
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Number of settings reported by default. */
+    static final int DEFAULT_COUNT = 10;
+
+    /** The configuration searched. */
+    private final Engine _engine;
+
+    /** The alphabet of _engine. */
+    private final Alphabet _alphabet;
+
+    /** All legal rotor orders, as indices of available rotors. */
+    private final List<int[]> _orders;
+
+    /** Machine used by each thread, with no plugboard. */
+    private final ThreadLocal<Machine> _machines;
+
+    /** Table of letter counts used by each thread, all zeros between
+     *  keys. */
+    private final ThreadLocal<int[]> _counts;
+}
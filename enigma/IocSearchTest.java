@@ -0,0 +1,58 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.AfterClass;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+/** The suite of all JUnit tests for the IocSearch class.
+ *  @author Christopher Lee
+ */
+public class IocSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Pool on which the tests run searches. */
+    private static final ForkJoinPool POOL = new ForkJoinPool(2);
+
+    /** Release the threads of POOL. */
+    @AfterClass
+    public static void shutDownPool() {
+        POOL.shutdown();
+    }
+
+    /** Some English text. */
+    static final String PLAIN =
+        "ITWASTHEBESTOFTIMESITWASTHEWORSTOFTIMESITWASTHEAGEOFWISDOMIT"
+        + "WASTHEAGEOFFOOLISHNESSITWASTHEEPOCHOFBELIEFITWASTHEEPOCHOF"
+        + "INCREDULITYITWASTHESEASONOFLIGHTITWASTHESEASONOFDARKNESSIT"
+        + "WASTHESPRINGOFHOPEITWASTHEWINTEROFDESPAIR";
+
+    @Test
+    public void checkIndexOfCoincidence() {
+        Alphabet alphabet = new Alphabet("ABCD");
+        assertEquals(1.0, IocSearch.indexOfCoincidence(alphabet, "AAAA"),
+                     1e-9);
+        assertEquals(0.0, IocSearch.indexOfCoincidence(alphabet, "AB CD"),
+                     1e-9);
+        assertEquals(2.0 / 6, IocSearch.indexOfCoincidence(alphabet, "AABB"),
+                     1e-9);
+    }
+
+    @Test
+    public void checkFindsKey() {
+        Engine engine = new Engine(CribSearchTest.CONFIG);
+        String setting = "* B I III MK";
+        String cipher = engine.convert(setting, PLAIN);
+        CribSearch.Result result = new IocSearch(engine)
+            .search(cipher, 3, POOL);
+        assertEquals(6 * 26 * 26, result.keys());
+        assertEquals(3, result.candidates().size());
+        assertEquals(setting, result.candidates().get(0));
+    }
+}
@@ -0,0 +1,150 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** The sequence of substitutions performed by a machine as it converts
+ *  successive characters, starting from a given state.  The rotor
+ *  positions of a machine eventually repeat, so the sequence consists of
+ *  a (usually empty) lead-in followed by a cycle that repeats forever;
+ *  both are stored, one full substitution table per step.
+ *  @author Christopher Lee
+ */
+class Keystream {
+
+    /** A keystream of length LENGTH whose cycle starts at step TAIL, and
+     *  whose table for step K occupies TABLES[K * SIZE .. K * SIZE + SIZE-1]
+     *  for an alphabet of SIZE characters. */
+    private Keystream(int[] tables, int size, int tail, int length) {
+        _tables = tables;
+        _size = size;
+        _tail = tail;
+        _length = length;
+    }
+
+    /** Return the keystream of MACHINE from its current state, or null if
+     *  its period is so long that the tables would have more than
+     *  MAXENTRIES entries in all.  Changes the state of MACHINE. */
+    static Keystream build(Machine machine, int maxEntries) {
+        int size = machine.getAlphabet().size();
+        int slots = machine.getRotors().size();
+        if (size == 0 || Math.pow(size, slots) >= Long.MAX_VALUE) {
+            return null;
+        }
+        int maxSteps = maxEntries / size;
+        LongIntMap seen = new LongIntMap(Math.min(maxSteps, 1 << 16));
+        int[] tables = new int[size * Math.min(maxSteps, 1 << 12)];
+        for (int step = 0; step < maxSteps; step++) {
+            machine.advance(1);
+            long state = machine.positionKey();
+            int previous = seen.putIfAbsent(state, step);
+            if (previous >= 0) {
+                return new Keystream(tables, size, previous, step);
+            }
+            if ((step + 1) * size > tables.length) {
+                int[] larger = new int[Math.min(2 * tables.length,
+                                                maxSteps * size)];
+                System.arraycopy(tables, 0, larger, 0, tables.length);
+                tables = larger;
+            }
+            machine.substitution(tables, step * size);
+        }
+        return null;
+    }
+
+    /** Return the size of the alphabet. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of distinct steps: the lead-in plus one cycle. */
+    int length() {
+        return _length;
+    }
+
+    /** Return the step at which the cycle starts. */
+    int tail() {
+        return _tail;
+    }
+
+    /** Return the table of the substitution used for the STEP-th character
+     *  converted (counting from 0).  Entry K of the table for step K is
+     *  at index(STEP) * size() + K. */
+    int[] tables() {
+        return _tables;
+    }
+
+    /** Return the index of the table used for the STEP-th character
+     *  converted, counting from 0. */
+    int index(long step) {
+        if (step < _length) {
+            return (int) step;
+        }
+        return _tail + (int) ((step - _tail) % (_length - _tail));
+    }
+
+    /** The substitution tables, one per step. */
+    private final int[] _tables;
+
+    /** The size of the alphabet. */
+    private final int _size;
+
+    /** The step at which the cycle starts. */
+    private final int _tail;
+
+    /** The number of distinct steps. */
+    private final int _length;
+
+    /** A minimal open-addressed map from long keys to non-negative ints,
+     *  used to find the first repeated state without boxing. */
+    private static class LongIntMap {
+        /** An empty map sized for about EXPECTED entries. */
+        LongIntMap(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(expected, 8)) * 4;
+            _keys = new long[capacity];
+            _values = new int[capacity];
+            Arrays.fill(_values, -1);
+        }
+
+        /** Map KEY to VALUE unless KEY is already present.  Returns the
+         *  existing value, or -1 if KEY was absent. */
+        int putIfAbsent(long key, int value) {
+            if (2 * (_count + 1) > _keys.length) {
+                grow();
+            }
+            int mask = _keys.length - 1;
+            int k = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+            while (_values[k] >= 0) {
+                if (_keys[k] == key) {
+                    return _values[k];
+                }
+                k = (k + 1) & mask;
+            }
+            _keys[k] = key;
+            _values[k] = value;
+            _count += 1;
+            return -1;
+        }
+
+        /** Double my capacity. */
+        private void grow() {
+            long[] keys = _keys;
+            int[] values = _values;
+            _keys = new long[2 * keys.length];
+            _values = new int[2 * keys.length];
+            Arrays.fill(_values, -1);
+            _count = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (values[i] >= 0) {
+                    putIfAbsent(keys[i], values[i]);
+                }
+            }
+        }
+
+        /** Keys of occupied slots. */
+        private long[] _keys;
+        /** Values of occupied slots, or -1 for empty slots. */
+        private int[] _values;
+        /** Number of occupied slots. */
+        private int _count;
+    }
+}
@@ -0,0 +1,122 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/** A bounded, thread-safe cache of the keystreams of machines, keyed by
+ *  rotor selection, starting positions and plugboard, so that a key used
+ *  for many messages has its keystream computed only once.  Building a
+ *  keystream costs about as much as converting one period of the
+ *  machine, so one is built only for a key that has been set before or
+ *  under which at least a minimum number of characters are converted.
+ *  Threads wanting the same keystream at once share a single build.
+ *  Machines sharing a cache must be built from the same set of rotors.
+ *  @author Christopher Lee
+ */
+class KeystreamCache {
+
+    /** A cache holding at most CAPACITY keystreams, each with at most
+     *  MAXENTRIES table entries, which builds a keystream for a key used
+     *  once only if at least MINLENGTH characters are converted with
+     *  it. */
+    KeystreamCache(int capacity, int maxEntries, int minLength) {
+        _maxEntries = maxEntries;
+        _minLength = minLength;
+        _cache = new LinkedHashMap<String, FutureTask<Keystream>>(
+            16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, FutureTask<Keystream>> e) {
+                return size() > capacity;
+            }
+        };
+        _used = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> e) {
+                return size() > USED_PER_ENTRY * capacity;
+            }
+        };
+    }
+
+    /** Returns the least number of characters that must be converted
+     *  under a key used once for its keystream to be built. */
+    int minLength() {
+        return _minLength;
+    }
+
+    /** Returns the keystream for KEY, a Machine.stateKey(), if it is
+     *  cached or being built (waiting for the build), or null if it is
+     *  not or its period is too long to tabulate. */
+    Keystream cached(String key) {
+        FutureTask<Keystream> task;
+        synchronized (_cache) {
+            task = _cache.get(key);
+        }
+        return task == null ? null : result(key, task);
+    }
+
+    /** Record a use of KEY.  Returns true iff KEY has been used
+     *  recently. */
+    boolean reused(String key) {
+        synchronized (_used) {
+            return _used.put(key, Boolean.TRUE) != null;
+        }
+    }
+
+    /** Return the keystream for KEY, the stateKey() of START, building it
+     *  from START if no other thread is, or null if its period is too long
+     *  to tabulate.  Changes the state of START. */
+    Keystream get(String key, Machine start) {
+        FutureTask<Keystream> task;
+        synchronized (_cache) {
+            task = _cache.get(key);
+            if (task == null) {
+                task = new FutureTask<>(
+                    () -> Keystream.build(start, _maxEntries));
+                _cache.put(key, task);
+            }
+        }
+        task.run();
+        return result(key, task);
+    }
+
+    /** Returns the result of TASK, the build of the keystream for KEY,
+     *  once it is finished, or null if it failed or this thread is
+     *  interrupted. */
+    private Keystream result(String key, FutureTask<Keystream> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException excp) {
+            synchronized (_cache) {
+                _cache.remove(key, task);
+            }
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /** Number of recently used keys remembered per keystream cached. */
+    private static final int USED_PER_ENTRY = 8;
+
+    /** Largest number of table entries in a cached keystream. */
+    private final int _maxEntries;
+
+    /** Least number of characters for which a keystream is built for a
+     *  key used once. */
+    private final int _minLength;
+
+    /** Builds of keystreams, done or in progress, by the stateKey() of the
+     *  machine they start from. */
+    private final LinkedHashMap<String, FutureTask<Keystream>> _cache;
+
+    /** Recently used keys. */
+    private final LinkedHashMap<String, Boolean> _used;
+}
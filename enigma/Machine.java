@@ -1,25 +1,104 @@
 package enigma;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
 
 import static enigma.EnigmaException.*;
 
-/** Class that represents a complete enigma machine.
+/** Class that represents a complete enigma machine.  The rotors are
+ *  immutable and may be shared with other machines; a machine's state is
+ *  the selection of rotors, their positions and its plugboard.
  *  @author Christopher Lee
  */
 class Machine {
 
     /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
      *  and 0 <= PAWLS < NUMROTORS pawls.  ALLROTORS contains all the
-     *  available rotors. */
+     *  available rotors, which must have distinct names and alphabets of
+     *  the size of ALPHA; it must not be changed afterwards. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, allRotors,
+             allRotors.toArray(new Rotor[0]),
+             indexRotors(alpha, numRotors, pawls, allRotors));
+    }
+
+    /** A new Enigma machine as for Machine(ALPHA, NUMROTORS, PAWLS,
+     *  ALLROTORS), where AVAILABLE holds ALLROTORS in order and ROTORINDEX
+     *  maps the name of each of them to its index in AVAILABLE. */
+    private Machine(Alphabet alpha, int numRotors, int pawls,
+                    Collection<Rotor> allRotors, Rotor[] available,
+                    HashMap<String, Integer> rotorIndex) {
         _alphabet = alpha;
         _numRotors = numRotors;
         _pawls = pawls;
         _allRotors = allRotors;
+        _available = available;
+        _rotorIndex = rotorIndex;
         _rotors = new ArrayList<Rotor>();
+        _slots = new Rotor[0];
+        _positions = new int[0];
+        _slotIndex = new int[0];
+        _rotorPositions = new int[available.length];
+        setPlugboard(new Permutation("", alpha));
+        _core = new int[alpha.size()];
+        _coreCache = new LinkedHashMap<Long, int[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, int[]> e) {
+                return size() > CORE_CACHE_SIZE;
+            }
+        };
+    }
+
+    /** A new machine in the same state as MACHINE, sharing its rotors
+     *  but with positions of its own, so that the two can be used
+     *  independently (for example, in different threads). */
+    Machine(Machine machine) {
+        this(machine._alphabet, machine._numRotors, machine._pawls,
+             machine._allRotors, machine._available, machine._rotorIndex);
+        _rotors = new ArrayList<Rotor>(machine._rotors);
+        _slots = machine._slots;
+        _positions = machine._positions.clone();
+        _rotorPositions = machine._rotorPositions.clone();
+        _slotIndex = machine._slotIndex;
+        _coreStale = true;
+        setPlugboard(machine._plugboard);
+        _keystreams = machine._keystreams;
+        _keystream = machine._keystream;
+        _pendingKey = machine._pendingKey;
+        _pendingStart = machine._pendingStart;
+        _keyStep = machine._keyStep;
+        _metrics = machine._metrics;
+    }
+
+    /** Returns a map from the name of each of ALLROTORS to its index in
+     *  ALLROTORS, after checking that ALLROTORS are suitable for a machine
+     *  with alphabet ALPHA, NUMROTORS slots and PAWLS pawls. */
+    private static HashMap<String, Integer> indexRotors(
+        Alphabet alpha, int numRotors, int pawls,
+        Collection<Rotor> allRotors) {
+        if (numRotors < 2) {
+            throw error("a machine needs at least 2 rotor slots");
+        }
+        if (pawls < 0 || pawls >= numRotors) {
+            throw error("bad number of pawls: %d", pawls);
+        }
+        HashMap<String, Integer> result = new HashMap<>();
+        for (Rotor rotor : allRotors) {
+            if (rotor.size() != alpha.size()) {
+                throw error("rotor %s does not fit the alphabet",
+                            rotor.name());
+            }
+            if (result.putIfAbsent(rotor.name(), result.size()) != null) {
+                throw error("duplicate rotor name: %s", rotor.name());
+            }
+        }
+        return result;
     }
 
     /** Return the number of rotor slots I have. */
@@ -38,6 +117,12 @@ class Machine {
         return _rotors;
     }
 
+    /** Returns the setting of the rotor in slot SLOT (0 being the
+     *  reflector). */
+    int setting(int slot) {
+        return _positions[slot];
+    }
+
     /** Returns all rotors of Machine. */
     Collection<Rotor> getAllRotors() {
         return _allRotors;
@@ -50,36 +135,346 @@ class Machine {
 
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  Initially, all rotors are set at their 0 setting; afterwards, each
+     *  keeps the setting it had when last removed from a slot. */
     void insertRotors(String[] rotors) {
-        _rotors = new ArrayList<Rotor>();
-        for (String rotorName : rotors) {
-            boolean added = false;
-            for (Rotor eachRotor : _allRotors) {
-                if (eachRotor.name().equals(rotorName)) {
-                    _rotors.add(eachRotor);
-                    added = true;
-                    break;
-                }
-            }
-            if (!added) {
-                throw error("_allRotors does not contain such rotor input");
+        int[] slotIndex = new int[rotors.length];
+        for (int k = 0; k < rotors.length; k++) {
+            slotIndex[k] = rotorIndex(rotors[k]);
+        }
+        insertRotors(slotIndex);
+    }
+
+    /** Returns the index in getAllRotors() of the rotor named NAME. */
+    int rotorIndex(String name) {
+        Integer index = _rotorIndex.get(name);
+        if (index == null) {
+            throw error("no rotor named %s", name);
+        }
+        return index;
+    }
+
+    /** Set my rotor slots to the rotors whose indices in getAllRotors()
+     *  are SLOTINDEX (SLOTINDEX[0] being the reflector's), as for
+     *  insertRotors(String[]).  SLOTINDEX must not be changed
+     *  afterwards. */
+    void insertRotors(int[] slotIndex) {
+        Rotor[] slots = new Rotor[slotIndex.length];
+        for (int k = 0; k < slotIndex.length; k++) {
+            if (slotIndex[k] < 0 || slotIndex[k] >= _available.length) {
+                throw error("no rotor numbered %d", slotIndex[k]);
             }
+            slots[k] = _available[slotIndex[k]];
         }
+        for (int k = 0; k < _slotIndex.length; k++) {
+            _rotorPositions[_slotIndex[k]] = _positions[k];
+        }
+        _rotors = new ArrayList<Rotor>(Arrays.asList(slots));
+        _slotIndex = slotIndex;
+        if (!Arrays.equals(slots, _slots)) {
+            _coreCache.clear();
+        }
+        _slots = slots;
+        _positions = new int[slots.length];
+        for (int k = 0; k < slotIndex.length; k++) {
+            _positions[k] = _rotorPositions[slotIndex[k]];
+        }
+        _coreStale = true;
+        dropKeystream();
     }
 
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
-        for (int i = 0; i < setting.length(); i++) {
-            _rotors.get(i + 1).set(_alphabet.toInt(setting.charAt(i)));
+        if (setting.length() >= _slots.length) {
+            throw error("too many rotor settings: %s", setting);
+        }
+        int[] positions = new int[setting.length()];
+        for (int i = 0; i < positions.length; i++) {
+            char c = setting.charAt(i);
+            positions[i] = _alphabet.toInt(c);
+            if (positions[i] < 0) {
+                throw error("'%c' is not in the alphabet", c);
+            }
+        }
+        setRotors(positions);
+    }
+
+    /** Set my rotors according to POSITIONS, as for setRotors(String),
+     *  but with each setting given as its index in my alphabet. */
+    void setRotors(int[] positions) {
+        if (positions.length >= _slots.length) {
+            throw error("too many rotor settings");
+        }
+        for (int i = 0; i < positions.length; i++) {
+            _positions[i + 1] = _slots[i + 1].checkSetting(positions[i]);
+        }
+        _coreStale = true;
+        _keyStep = 0;
+        findKeystream();
+    }
+
+    /** Use the keystream for my current state from _keystreams, if there
+     *  is one.  If it is not cached and my state has not been set
+     *  recently, put off building it until enough characters are
+     *  converted to pay for it. */
+    private void findKeystream() {
+        dropKeystream();
+        if (_keystreams == null) {
+            return;
         }
+        String key = stateKey();
+        _keystream = _keystreams.cached(key);
+        if (_keystream != null) {
+            return;
+        }
+        if (_keystreams.reused(key)) {
+            _keystream = _keystreams.get(key, new Machine(this));
+        } else {
+            _pendingKey = key;
+            _pendingStart = _positions.clone();
+        }
+    }
+
+    /** Build the keystream put off by findKeystream if converting N more
+     *  characters will bring the number converted since my last
+     *  setRotors to at least _keystreams.minLength(). */
+    private void buildKeystream(int n) {
+        if (_pendingKey == null
+            || _keyStep + n < _keystreams.minLength()) {
+            return;
+        }
+        Machine start = new Machine(this);
+        start._positions = _pendingStart;
+        start._keyStep = 0;
+        _keystream = _keystreams.get(_pendingKey, start);
+        _pendingKey = null;
+        _pendingStart = null;
+    }
+
+    /** Stop using or waiting to build a keystream. */
+    private void dropKeystream() {
+        _keystream = null;
+        _pendingKey = null;
+        _pendingStart = null;
     }
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugboard = plugboard;
+        _plugTable = plugboard.forwardTable();
+        dropKeystream();
+    }
+
+    /** Returns my plugboard, which must swap letters in pairs, as its rank
+     *  among all such plugboards for my alphabet.  The rank depends only
+     *  on the pairs swapped, so it can be restored by setPlugboardKey in
+     *  any machine with the same alphabet, in this process or another.
+     *  Plugboards are ordered by the letter paired with the first letter
+     *  (itself first), then by the rest of the plugboard in the same way.
+     *  Only defined for alphabets of at most MAX_PLUGBOARD_LETTERS
+     *  letters, for which the number of plugboards fits in a long. */
+    long plugboardKey() {
+        int n = plugboardLetters();
+        long done = 0;
+        int left = n;
+        long key = 0;
+        for (int i = 0; i < n; i++) {
+            if ((done & (1L << i)) != 0) {
+                continue;
+            }
+            int j = _plugTable[i];
+            if (_plugTable[j] != i) {
+                throw error("plugboard does not swap letters in pairs");
+            }
+            left -= 1;
+            if (j != i) {
+                long between = ~done & ((1L << j) - (1L << (i + 1)));
+                key += INVOLUTIONS[left]
+                    + Long.bitCount(between) * INVOLUTIONS[left - 1];
+                done |= 1L << j;
+                left -= 1;
+            }
+        }
+        return key;
+    }
+
+    /** Set my plugboard to the one whose rank is KEY, as returned by
+     *  plugboardKey() of a machine with my alphabet. */
+    void setPlugboardKey(long key) {
+        int n = plugboardLetters();
+        if (key < 0 || key >= INVOLUTIONS[n]) {
+            throw error("invalid plugboard");
+        }
+        long done = 0;
+        int left = n;
+        StringBuilder cycles = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            if ((done & (1L << i)) != 0) {
+                continue;
+            }
+            left -= 1;
+            if (key < INVOLUTIONS[left]) {
+                continue;
+            }
+            key -= INVOLUTIONS[left];
+            long k = key / INVOLUTIONS[left - 1];
+            key %= INVOLUTIONS[left - 1];
+            int j = i;
+            do {
+                j += 1;
+                if ((done & (1L << j)) == 0) {
+                    k -= 1;
+                }
+            } while (k >= 0);
+            done |= 1L << j;
+            left -= 1;
+            cycles.append('(').append(_alphabet.toChar(i))
+                .append(_alphabet.toChar(j)).append(") ");
+        }
+        setPlugboard(new Permutation(cycles.toString(), _alphabet));
+    }
+
+    /** Returns the size of my alphabet, after checking that my plugboards
+     *  can be numbered. */
+    private int plugboardLetters() {
+        if (size() > MAX_PLUGBOARD_LETTERS) {
+            throw error("too many letters to number plugboards");
+        }
+        return size();
+    }
+
+    /** Returns my rotor selection as a number in base N, where N is the
+     *  number of available rotors: each digit is the index of the rotor
+     *  in a slot in getAllRotors(), the reflector's being the most
+     *  significant.  Only meaningful if N ** numRotors() fits in a
+     *  long. */
+    long rotorOrder() {
+        long order = 0;
+        int n = _available.length;
+        for (int index : _slotIndex) {
+            order = order * n + index;
+        }
+        return order;
+    }
+
+    /** Insert the rotors selected by ORDER, as returned by rotorOrder(),
+     *  as for insertRotors. */
+    void setRotorOrder(long order) {
+        int n = _available.length;
+        int[] slotIndex = new int[_numRotors];
+        for (int i = slotIndex.length - 1; i >= 0; i--) {
+            if (n == 0 || order < 0) {
+                throw error("invalid rotor order");
+            }
+            slotIndex[i] = (int) (order % n);
+            order /= n;
+        }
+        if (order != 0) {
+            throw error("invalid rotor order");
+        }
+        insertRotors(slotIndex);
+    }
+
+    /** Use keystreams from CACHE, or none if it is null.  When enabled,
+     *  setRotors finds the keystream for the new settings (so it must
+     *  follow insertRotors and setPlugboard), computing it if the settings
+     *  were used recently or once enough characters are converted under
+     *  them, and bulk conversions read it instead of running the rotors.
+     *  Rotors must not then be set except through setRotors.  CACHE must
+     *  only be shared with machines using the same set of rotors. */
+    void useKeystreams(KeystreamCache cache) {
+        _keystreams = cache;
+        dropKeystream();
+    }
+
+    /** Returns the cache my keystreams come from, or null if I use
+     *  none. */
+    KeystreamCache keystreams() {
+        return _keystreams;
+    }
+
+    /** Record the characters I convert in bulk in METRICS, or stop
+     *  recording them if it is null. */
+    void useMetrics(Metrics metrics) {
+        _metrics = metrics;
+    }
+
+    /** Returns a string identifying my rotor selection, rotor positions and
+     *  plugboard, which determine the rest of my behavior. */
+    String stateKey() {
+        StringBuilder key = new StringBuilder();
+        for (Rotor rotor : _slots) {
+            key.append(rotor.name()).append(' ');
+        }
+        for (int posn : _positions) {
+            key.append(_alphabet.toChar(posn));
+        }
+        key.append(' ');
+        for (int image : _plugTable) {
+            key.append(_alphabet.toChar(image));
+        }
+        return key.toString();
+    }
+
+    /** Returns my rotor positions as a number in base alphabet size, the
+     *  leftmost rotor being the most significant digit.  Only meaningful
+     *  if it fits in a long, as it does for up to 13 slots and 26
+     *  letters.  Together with rotorOrder() and plugboardKey(), this
+     *  records my complete state without allocating anything. */
+    long positionKey() {
+        long key = 0;
+        for (int posn : _positions) {
+            key = key * size() + posn;
+        }
+        return key;
+    }
+
+    /** Set my rotor positions to those recorded in KEY by positionKey(),
+     *  for the rotors now in my slots.  A keystream found by setRotors is
+     *  not used again until the next setRotors.  Changing only the
+     *  rightmost rotor's position allocates nothing. */
+    void setPositionKey(long key) {
+        int n = size();
+        int slow = Math.max(1, _positions.length - 1);
+        boolean slowMoved = false;
+        for (int i = _positions.length - 1; i >= 0; i--) {
+            if (key < 0) {
+                throw error("invalid rotor positions");
+            }
+            int posn = _slots[i].checkSetting((int) (key % n));
+            slowMoved |= i < slow && posn != _positions[i];
+            _positions[i] = posn;
+            key /= n;
+        }
+        if (key != 0) {
+            throw error("invalid rotor positions");
+        }
+        _coreStale |= slowMoved;
+        dropKeystream();
+    }
+
+    /** Store the substitution that I perform on each character at my
+     *  current rotor positions, without stepping, in OUT[START ..
+     *  START + alphabet size - 1]. */
+    void substitution(int[] out, int start) {
+        if (_coreStale) {
+            refreshCore();
+        }
+        int last = _slots.length - 1;
+        for (int c = 0; c < size(); c++) {
+            int x = _plugTable[c];
+            if (last > 0) {
+                Rotor fastest = _slots[last];
+                int posn = _positions[last];
+                x = fastest.convertBackward(
+                        _core[fastest.convertForward(x, posn)], posn);
+            } else {
+                x = _core[x];
+            }
+            out[start + c] = _plugTable[x];
+        }
     }
 
     /** Returns the result of converting the input character C (as an
@@ -87,42 +482,369 @@ class Machine {
      *  the machine. */
     int convert(int c) {
         int input = _plugboard.permute(c);
+        Rotor[] slots = _slots;
+        step();
+        _keyStep += 1;
+        if (_coreStale) {
+            refreshCore();
+        }
+        if (slots.length > 1) {
+            Rotor fastest = slots[slots.length - 1];
+            int posn = _positions[slots.length - 1];
+            input = fastest.convertForward(input, posn);
+            input = _core[input];
+            input = fastest.convertBackward(input, posn);
+        } else {
+            input = _core[input];
+        }
+        return _plugTable[input];
+    }
+
+    /** Advance my rotors as for one character, as the first step of
+     *  converting it. */
+    private void step() {
+        Rotor[] slots = _slots;
+        int[] positions = _positions;
         boolean doubleStepping = false;
-        for (int i = 1; i < _rotors.size(); i++) {
-            Rotor currentRotor = _rotors.get(i);
+        for (int i = 1; i < slots.length; i++) {
+            Rotor currentRotor = slots[i];
             if (currentRotor.rotates()) {
-                if (i == _rotors.size() - 1) {
-                    currentRotor.advance();
-                } else if (_rotors.get(i + 1).atNotch()) {
-                    currentRotor.advance();
+                if (i == slots.length - 1) {
+                    positions[i] = advanced(positions[i]);
+                } else if (slots[i + 1].atNotch(positions[i + 1])) {
+                    positions[i] = advanced(positions[i]);
                     doubleStepping = true;
+                    _coreStale = true;
                 } else if (doubleStepping) {
-                    currentRotor.advance();
+                    positions[i] = advanced(positions[i]);
                     doubleStepping = false;
+                    _coreStale = true;
                 }
             }
         }
-        for (int i = _rotors.size() - 1; 0 <= i; i--) {
-            Rotor currentRotor = _rotors.get(i);
-            input = currentRotor.convertForward(input);
+    }
+
+    /** Returns the setting following POSN. */
+    private int advanced(int posn) {
+        posn += 1;
+        return posn == size() ? 0 : posn;
+    }
+
+    /** Advance my rotors as convert(int) would when converting STEPS
+     *  characters, without converting anything.  Models the double
+     *  stepping of convert(int) and rotors with several notches exactly.
+     *  While no rotor but the rightmost can move, the rightmost is jumped
+     *  straight to its next notch, so the time taken is proportional to
+     *  the number of rotors times the number of times it passes a notch,
+     *  rather than to STEPS. */
+    void advance(long steps) {
+        _keyStep += steps;
+        Rotor[] slots = _slots;
+        int fast = slots.length - 1;
+        if (fast < 1) {
+            return;
+        }
+        boolean fastPushes = fast > 1 && slots[fast - 1].rotates();
+        while (steps > 0) {
+            int run = fastPushes
+                ? slots[fast].stepsToNotch(_positions[fast]) : -1;
+            if (run != 0 && onlyFastestMoves()) {
+                if (!slots[fast].rotates()) {
+                    return;
+                }
+                long jump = run < 0 ? steps : Math.min(run, steps);
+                _positions[fast] = (int) ((_positions[fast] + jump % size())
+                                          % size());
+                steps -= jump;
+            } else {
+                step();
+                steps -= 1;
+            }
+        }
+    }
+
+    /** Returns true iff no rotor but the rightmost would move at the next
+     *  step, other than because the rightmost is at a notch. */
+    private boolean onlyFastestMoves() {
+        Rotor[] slots = _slots;
+        int[] positions = _positions;
+        int fast = slots.length - 1;
+        for (int i = 1; i < fast; i++) {
+            if (slots[i].rotates()
+                && ((i + 1 < fast && slots[i + 1].atNotch(positions[i + 1]))
+                    || (i > 1 && slots[i - 1].rotates()
+                        && slots[i].atNotch(positions[i])))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the size of my alphabet. */
+    private int size() {
+        return _alphabet.size();
+    }
+
+    /** Make _core the substitution performed by every rotor except the
+     *  rightmost one (the reflector included) at their current settings,
+     *  reusing a cached table for these settings if there is one. */
+    private void refreshCore() {
+        _coreStale = false;
+        int slow = Math.max(1, _slots.length - 1);
+        int n = _alphabet.size();
+        long key = 0;
+        for (int i = 0; i < slow && key >= 0; i++) {
+            if (key > (Long.MAX_VALUE - n) / n) {
+                key = -1;
+            } else {
+                key = key * n + _positions[i];
+            }
+        }
+        int[] cached = key < 0 ? null : _coreCache.get(key);
+        if (cached != null) {
+            _core = cached;
+            return;
         }
-        for (int j = 1; j < _rotors.size(); j++) {
-            Rotor currentRotor = _rotors.get(j);
-            input = currentRotor.convertBackward(input);
+        int[] core = new int[n];
+        for (int x = 0; x < n; x++) {
+            int y = x;
+            for (int i = slow - 1; 0 <= i; i--) {
+                y = _slots[i].convertForward(y, _positions[i]);
+            }
+            for (int j = 1; j < slow; j++) {
+                y = _slots[j].convertBackward(y, _positions[j]);
+            }
+            core[x] = y;
+        }
+        if (key >= 0) {
+            _coreCache.put(key, core);
         }
-        input = _plugboard.permute(input);
-        return input;
+        _core = core;
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
-     *  the rotors accordingly. */
+     *  the rotors accordingly.  Spaces in MSG are ignored. */
     String convert(String msg) {
-        String result = "";
-        msg = msg.replaceAll(" ", "");
-        for (int i = 0; i < msg.length(); i++) {
-            result += _alphabet.toChar(convert(_alphabet.toInt(msg.charAt(i))));
+        char[] chars = msg.toCharArray();
+        int n = convert(chars, 0, chars.length, chars, 0);
+        return new String(chars, 0, n);
+    }
+
+    /** Convert the characters MSG[START .. END-1], ignoring spaces, and
+     *  store the results in OUT starting at OUT[OUTSTART], updating the
+     *  state of the rotors accordingly.  Returns the number of characters
+     *  stored.  OUT may be MSG itself, provided OUTSTART <= START. */
+    int convert(char[] msg, int start, int end, char[] out, int outStart) {
+        buildKeystream(end - start);
+        int n = _keystream != null
+            ? convertKeyed(msg, start, end, out, outStart)
+            : convertRotors(msg, start, end, out, outStart);
+        if (_metrics != null) {
+            _metrics.converted(n);
+        }
+        return n;
+    }
+
+    /** Convert MSG[START .. END-1] into OUT as for convert(char[], int,
+     *  int, char[], int), running the rotors for each character. */
+    private int convertRotors(char[] msg, int start, int end,
+                              char[] out, int outStart) {
+        int k = outStart;
+        for (int i = start; i < end; i++) {
+            char c = msg[i];
+            if (c == ' ') {
+                continue;
+            }
+            int index = _alphabet.toInt(c);
+            if (index < 0) {
+                throw error("'%c' is not in the alphabet", c);
+            }
+            out[k] = _alphabet.toChar(convert(index));
+            k += 1;
+        }
+        return k - outStart;
+    }
+
+    /** Convert MSG[START .. END-1] into OUT as for convert(char[], int,
+     *  int, char[], int), reading the substitutions from _keystream and
+     *  then moving the rotors to their final positions. */
+    private int convertKeyed(char[] msg, int start, int end,
+                             char[] out, int outStart) {
+        Keystream keystream = _keystream;
+        int[] tables = keystream.tables();
+        int size = keystream.size();
+        int length = keystream.length();
+        int step = keystream.index(_keyStep);
+        int k = outStart;
+        for (int i = start; i < end; i++) {
+            char c = msg[i];
+            if (c == ' ') {
+                continue;
+            }
+            int index = _alphabet.toInt(c);
+            if (index < 0) {
+                advance(k - outStart);
+                throw error("'%c' is not in the alphabet", c);
+            }
+            out[k] = _alphabet.toChar(tables[step * size + index]);
+            k += 1;
+            step += 1;
+            if (step == length) {
+                step = keystream.tail();
+            }
+        }
+        advance(k - outStart);
+        return k - outStart;
+    }
+
+    /** Convert the characters MSG[START .. END-1], ignoring spaces, and
+     *  store the results in OUT starting at OUT[OUTSTART], as for
+     *  convert(char[], int, int, char[], int), where each byte is a
+     *  character in ISO-8859-1.  My alphabet must consist of such
+     *  characters.  When I have a keystream, runs of characters without
+     *  spaces are converted in blocks with the Vector API if it is
+     *  available.  Returns the number of characters stored. */
+    int convert(byte[] msg, int start, int end, byte[] out, int outStart) {
+        buildKeystream(end - start);
+        int n = _keystream != null
+            ? convertKeyed(msg, start, end, out, outStart)
+            : convertRotors(msg, start, end, out, outStart);
+        if (_metrics != null) {
+            _metrics.converted(n);
+        }
+        return n;
+    }
+
+    /** Convert MSG[START .. END-1] into OUT as for convert(byte[], int,
+     *  int, byte[], int), running the rotors for each character. */
+    private int convertRotors(byte[] msg, int start, int end,
+                              byte[] out, int outStart) {
+        int k = outStart;
+        for (int i = start; i < end; i++) {
+            char c = (char) (msg[i] & BYTE_MASK);
+            if (c == ' ') {
+                continue;
+            }
+            int index = _alphabet.toInt(c);
+            if (index < 0) {
+                throw error("'%c' is not in the alphabet", c);
+            }
+            out[k] = (byte) _alphabet.toChar(convert(index));
+            k += 1;
+        }
+        return k - outStart;
+    }
+
+    /** Convert MSG[START .. END-1] into OUT as for convert(byte[], int,
+     *  int, byte[], int), reading the substitutions from _keystream, in
+     *  blocks through VECTOR where there are no spaces, and then moving
+     *  the rotors to their final positions. */
+    private int convertKeyed(byte[] msg, int start, int end,
+                             byte[] out, int outStart) {
+        Keystream keystream = _keystream;
+        int[] tables = keystream.tables();
+        int size = keystream.size();
+        int length = keystream.length();
+        int step = keystream.index(_keyStep);
+        if (VECTOR != null && _byteIndices == null) {
+            tabulateBytes();
+        }
+        int k = outStart;
+        int scalarEnd = start;
+        for (int i = start; i < end; ) {
+            if (i >= scalarEnd && VECTOR != null) {
+                int done = VECTOR.convert(tables, size, step, msg, i,
+                                          Math.min(end - i, length - step),
+                                          out, k, _byteIndices, _byteChars);
+                i += done;
+                k += done;
+                step += done;
+                if (step == length) {
+                    step = keystream.tail();
+                }
+                scalarEnd = i + VECTOR.blockSize();
+                continue;
+            }
+            char c = (char) (msg[i] & BYTE_MASK);
+            i += 1;
+            if (c == ' ') {
+                continue;
+            }
+            int index = _alphabet.toInt(c);
+            if (index < 0) {
+                advance(k - outStart);
+                throw error("'%c' is not in the alphabet", c);
+            }
+            out[k] = (byte) _alphabet.toChar(tables[step * size + index]);
+            k += 1;
+            step += 1;
+            if (step == length) {
+                step = keystream.tail();
+            }
+        }
+        advance(k - outStart);
+        return k - outStart;
+    }
+
+    /** Fill in _byteIndices and _byteChars for VECTOR. */
+    private void tabulateBytes() {
+        int[] indices = new int[BYTE_MASK + 1];
+        for (int b = 0; b < indices.length; b++) {
+            indices[b] = _alphabet.toInt((char) b);
+        }
+        int[] chars = new int[size()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = _alphabet.toChar(i);
+        }
+        _byteChars = chars;
+        _byteIndices = indices;
+    }
+
+    /** Returns the Vector API converter, or null if it is unavailable or
+     *  not worth using. */
+    private static ByteConverter vectorConverter() {
+        try {
+            ByteConverter result = (ByteConverter)
+                Class.forName("enigma.VectorEngine")
+                .getDeclaredConstructor().newInstance();
+            return result.available() ? result : null;
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            return null;
         }
-        return result;
+    }
+
+    /** Returns the encoding/decoding of MSG, ignoring spaces and updating
+     *  the state of the rotors, exactly as convert(MSG) does.  A long
+     *  message is split into segments that are converted concurrently,
+     *  each by a copy of this machine advanced to the segment's start. */
+    String convertParallel(String msg) {
+        char[] chars = msg.toCharArray();
+        int n = 0;
+        for (char c : chars) {
+            if (c == ' ') {
+                continue;
+            }
+            if (_alphabet.toInt(c) < 0) {
+                throw error("'%c' is not in the alphabet", c);
+            }
+            chars[n] = c;
+            n += 1;
+        }
+        if (n < MIN_PARALLEL_LENGTH) {
+            return new String(chars, 0, convert(chars, 0, n, chars, 0));
+        }
+        int segments = Math.min(n / MIN_SEGMENT_LENGTH,
+            PARALLEL_SEGMENTS * Runtime.getRuntime().availableProcessors());
+        int length = n;
+        IntStream.range(0, segments).parallel().forEach(k -> {
+            int start = (int) ((long) length * k / segments);
+            int end = (int) ((long) length * (k + 1) / segments);
+            Machine segment = new Machine(this);
+            segment.advance(start);
+            segment.convert(chars, start, end, chars, start);
+        });
+        advance(n);
+        return new String(chars, 0, n);
     }
 
     /** Common alphabet of my rotors. */
@@ -135,11 +857,111 @@ class Machine {
     private final int _pawls;
 
     /** Collection of all rotors. */
-    private Collection<Rotor> _allRotors;
+    private final Collection<Rotor> _allRotors;
+
+    /** The rotors in _allRotors, in order. */
+    private final Rotor[] _available;
+
+    /** Maps the name of each rotor in _allRotors to its index there. */
+    private final HashMap<String, Integer> _rotorIndex;
 
     /** Arraylist of rotors. */
     private ArrayList<Rotor> _rotors;
 
     /** Plugboard of machine. */
     private Permutation _plugboard;
+
+    /** Forward table of _plugboard. */
+    private int[] _plugTable;
+
+    /** The rotors in _rotors, as an array for the conversion loop. */
+    private Rotor[] _slots;
+
+    /** _positions[I] is the setting of the rotor in _slots[I]. */
+    private int[] _positions;
+
+    /** _slotIndex[I] is the index of _slots[I] in _allRotors. */
+    private int[] _slotIndex;
+
+    /** _rotorPositions[I] is the setting of the rotor with index I in
+     *  _allRotors when it was last removed from my slots. */
+    private int[] _rotorPositions;
+
+    /** Substitution performed by all my rotors except the rightmost, at
+     *  their current settings.  Valid only if !_coreStale. */
+    private int[] _core;
+
+    /** True iff a rotor other than the rightmost may have moved since
+     *  _core was computed. */
+    private boolean _coreStale;
+
+    /** Recently used values of _core, keyed by the settings of the rotors
+     *  it covers, read as a number in base alphabet size.  Only valid for
+     *  the rotors currently in _slots. */
+    private final LinkedHashMap<Long, int[]> _coreCache;
+
+    /** Keystreams used when the rotors are set, or null if none are. */
+    private KeystreamCache _keystreams;
+
+    /** The keystream from my last setRotors, or null if there is none or
+     *  the rotors or plugboard have since been replaced. */
+    private Keystream _keystream;
+
+    /** The stateKey() at my last setRotors, if its keystream is to be
+     *  built once enough characters are converted, or else null. */
+    private String _pendingKey;
+
+    /** My rotor positions at my last setRotors, when _pendingKey is not
+     *  null. */
+    private int[] _pendingStart;
+
+    /** Number of characters converted (or stepped over) since my last
+     *  setRotors. */
+    private long _keyStep;
+
+    /** Where my bulk conversions are recorded, or null if they are
+     *  not. */
+    private Metrics _metrics;
+
+    /** For VECTOR, the alphabet index of each byte value (negative if
+     *  it is not in my alphabet), or null if not yet computed. */
+    private int[] _byteIndices;
+
+    /** For VECTOR, the character with each alphabet index. */
+    private int[] _byteChars;
+
+    /** Converter using the Vector API, or null if there is none. */
+    private static final ByteConverter VECTOR = vectorConverter();
+
+    /** Mask selecting the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Shortest message converted concurrently by convertParallel. */
+    private static final int MIN_PARALLEL_LENGTH = 1 << 16;
+
+    /** Shortest segment converted concurrently by convertParallel. */
+    private static final int MIN_SEGMENT_LENGTH = 1 << 14;
+
+    /** Number of segments per processor used by convertParallel, so that
+     *  the work stays balanced. */
+    private static final int PARALLEL_SEGMENTS = 4;
+
+    /** Largest alphabet whose plugboards are numbered by
+     *  plugboardKey(). */
+    static final int MAX_PLUGBOARD_LETTERS = 31;
+
+    /** INVOLUTIONS[M] is the number of ways of swapping letters in pairs
+     *  in an alphabet of M letters. */
+    private static final long[] INVOLUTIONS =
+        new long[MAX_PLUGBOARD_LETTERS + 1];
+
+    static {
+        INVOLUTIONS[0] = INVOLUTIONS[1] = 1;
+        for (int m = 2; m < INVOLUTIONS.length; m++) {
+            INVOLUTIONS[m] = INVOLUTIONS[m - 1] + (m - 1) * INVOLUTIONS[m - 2];
+        }
+    }
+
+    /** Number of tables kept in _coreCache. */
+    private static final int CORE_CACHE_SIZE = 4096;
 }
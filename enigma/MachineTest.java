@@ -5,6 +5,13 @@ import static org.junit.Assert.*;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static enigma.TestUtils.*;
 
@@ -58,8 +65,8 @@ public class MachineTest {
         assertEquals(allRotors, mach.getRotors());
         String input = "ABC";
         mach.setRotors(input);
-        assertEquals(0, mach.getRotors().get(1).setting());
-        assertEquals(1, mach.getRotors().get(2).setting());
+        assertEquals(0, mach.setting(1));
+        assertEquals(1, mach.setting(2));
     }
 
     @Test
@@ -88,15 +95,15 @@ public class MachineTest {
         Permutation plugPerm2 = new Permutation("(AB) (HK)", UPPER);
         mach2.setPlugboard(plugPerm2);
         mach2.convert(2);
-        System.out.println(mach2.getRotors().get(3).setting());
-        System.out.println(mach2.getRotors().get(2).setting());
-        System.out.println(mach2.getRotors().get(1).setting());
-        System.out.println(mach2.getRotors().get(0).setting());
+        System.out.println(mach2.setting(3));
+        System.out.println(mach2.setting(2));
+        System.out.println(mach2.setting(1));
+        System.out.println(mach2.setting(0));
         mach2.convert(2);
-        System.out.println(mach2.getRotors().get(3).setting());
-        System.out.println(mach2.getRotors().get(2).setting());
-        System.out.println(mach2.getRotors().get(1).setting());
-        System.out.println(mach2.getRotors().get(0).setting());
+        System.out.println(mach2.setting(3));
+        System.out.println(mach2.setting(2));
+        System.out.println(mach2.setting(1));
+        System.out.println(mach2.setting(0));
 
         Machine mach1 = new Machine(alpha, 5, 3, allRotors);
         String[] inputString1 = {"reflector", "Beta", "_III", "_IV", "1"};
@@ -108,10 +115,10 @@ public class MachineTest {
             mach1.convert(i);
         }
         mach1.convert(0);
-        System.out.println(mach1.getRotors().get(1).setting());
-        System.out.println(mach1.getRotors().get(2).setting());
-        System.out.println(mach1.getRotors().get(3).setting());
-        System.out.println(mach1.getRotors().get(4).setting());
+        System.out.println(mach1.setting(1));
+        System.out.println(mach1.setting(2));
+        System.out.println(mach1.setting(3));
+        System.out.println(mach1.setting(4));
     }
 
     @Test
@@ -130,4 +137,410 @@ public class MachineTest {
         String inputString = "C C";
         assertEquals("MZ", mach.convert(inputString));
     }
+
+    @Test
+    public void checkLongMessageRoundTrip() {
+        allRotors.add(reflector);
+        allRotors.add(rotorBeta);
+        allRotors.add(_III);
+        allRotors.add(_IV);
+        allRotors.add(rotor1);
+        Machine mach = new Machine(alpha, 5, 3, allRotors);
+        mach.insertRotors(new String[]{"reflector", "Beta", "_III", "_IV",
+                                       "1"});
+        mach.setPlugboard(new Permutation("(YF) (ZH)", UPPER));
+        StringBuilder plain = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            plain.append(UPPER_STRING.charAt((i * 7 + i / 26) % 26));
+        }
+        mach.setRotors("AXLE");
+        String cipher = mach.convert(plain.toString());
+        mach.setRotors("AXLE");
+        assertEquals(cipher, mach.convert(plain.toString()));
+        mach.setRotors("AXLE");
+        assertEquals(plain.toString(), mach.convert(cipher));
+    }
+
+    @Test
+    public void checkConvertIntoBuffer() {
+        allRotors.add(reflector);
+        allRotors.add(rotor1);
+        allRotors.add(rotor2);
+        allRotors.add(rotor3);
+        Machine mach = new Machine(alpha, 4, 3, allRotors);
+        mach.insertRotors(new String[]{"reflector", "1", "2", "3"});
+        mach.setPlugboard(new Permutation("(AB) (HK)", UPPER));
+        char[] msg = "xC Cx".toCharArray();
+        char[] out = new char[4];
+        assertEquals(2, mach.convert(msg, 1, 4, out, 1));
+        assertEquals('M', out[1]);
+        assertEquals('Z', out[2]);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkConvertBadCharacter() {
+        allRotors.add(reflector);
+        allRotors.add(rotor1);
+        allRotors.add(rotor2);
+        allRotors.add(rotor3);
+        Machine mach = new Machine(alpha, 4, 3, allRotors);
+        mach.insertRotors(new String[]{"reflector", "1", "2", "3"});
+        mach.convert("HELLO, WORLD");
+    }
+
+    @Test
+    public void checkCopyIsIndependent() {
+        allRotors.add(reflector);
+        allRotors.add(rotor1);
+        allRotors.add(rotor2);
+        allRotors.add(rotor3);
+        Machine mach = new Machine(alpha, 4, 3, allRotors);
+        mach.insertRotors(new String[]{"reflector", "1", "2", "3"});
+        mach.setPlugboard(new Permutation("(AB) (HK)", UPPER));
+        Machine copy = new Machine(mach);
+        assertEquals("MZ", copy.convert("CC"));
+        assertEquals(0, mach.setting(3));
+        assertEquals("MZ", mach.convert("CC"));
+        assertEquals(2, copy.setting(3));
+    }
+
+    @Test
+    public void checkSharedRotorsAreIndependent() {
+        allRotors.add(reflector);
+        allRotors.add(rotor1);
+        allRotors.add(rotor2);
+        allRotors.add(rotor3);
+        Machine mach1 = new Machine(alpha, 4, 3, allRotors);
+        Machine mach2 = new Machine(alpha, 4, 3, allRotors);
+        mach1.insertRotors(new String[]{"reflector", "1", "2", "3"});
+        mach2.insertRotors(new String[]{"reflector", "1", "2", "3"});
+        String first = mach1.convert("HELLOWORLD");
+        assertEquals(0, mach2.setting(3));
+        assertEquals(first, mach2.convert("HELLOWORLD"));
+        assertEquals(mach1.setting(3), mach2.setting(3));
+    }
+
+    @Test
+    public void checkRotorsKeepSettings() {
+        allRotors.add(reflector);
+        allRotors.add(rotor1);
+        allRotors.add(rotor2);
+        allRotors.add(rotor3);
+        Machine mach = new Machine(alpha, 4, 3, allRotors);
+        mach.insertRotors(new String[]{"reflector", "1", "2", "3"});
+        mach.setRotors("BCD");
+        mach.insertRotors(new String[]{"reflector", "3", "1", "2"});
+        assertEquals(3, mach.setting(1));
+        assertEquals(1, mach.setting(2));
+        assertEquals(2, mach.setting(3));
+        mach.setRotors("E");
+        Machine copy = new Machine(mach);
+        copy.insertRotors(new String[]{"reflector", "1", "2", "3"});
+        assertEquals(1, copy.setting(1));
+        assertEquals(2, copy.setting(2));
+        assertEquals(4, copy.setting(3));
+        assertEquals(4, mach.setting(1));
+    }
+
+    @Test
+    public void checkSnapshotRestore() {
+        allRotors.add(reflector);
+        allRotors.add(rotor1);
+        allRotors.add(rotor2);
+        allRotors.add(rotor3);
+        Machine mach = new Machine(alpha, 4, 3, allRotors);
+        mach.insertRotors(new String[]{"reflector", "3", "1", "2"});
+        mach.setRotors("BZA");
+        mach.setPlugboard(new Permutation("(AB) (HK)", UPPER));
+        mach.convert("HELLO");
+        long order = mach.rotorOrder();
+        long positions = mach.positionKey();
+        long plugboard = mach.plugboardKey();
+        String expected = mach.convert("WORLDWORLD");
+
+        Machine restored = new Machine(alpha, 4, 3, allRotors);
+        restored.setRotorOrder(order);
+        restored.setPositionKey(positions);
+        restored.setPlugboardKey(plugboard);
+        assertEquals(order, restored.rotorOrder());
+        assertEquals(positions, restored.positionKey());
+        assertEquals(plugboard, restored.plugboardKey());
+        assertEquals(expected, restored.convert("WORLDWORLD"));
+    }
+
+    @Test
+    public void checkSnapshotInFreshEngine() {
+        String config = CribSearchTest.CONFIG;
+        Machine mach = new Engine(config).newMachine();
+        new Engine(config).setUp(mach, "* B III I QD (AT) (KM) (BZ)");
+        mach.convert("ATTACKATDAWN");
+        long order = mach.rotorOrder();
+        long positions = mach.positionKey();
+        long plugboard = mach.plugboardKey();
+        String expected = mach.convert("ONTHEEASTERNFRONT");
+
+        Machine restored = new Engine(config).newMachine();
+        restored.setRotorOrder(order);
+        restored.setPositionKey(positions);
+        restored.setPlugboardKey(plugboard);
+        assertEquals(expected, restored.convert("ONTHEEASTERNFRONT"));
+    }
+
+    @Test
+    public void checkPlugboardKeys() {
+        long all = 532985208200576L;
+        Machine mach = new Engine(CribSearchTest.CONFIG).newMachine();
+        assertEquals(0, mach.plugboardKey());
+        mach.setPlugboard(new Permutation("(AB)", UPPER));
+        assertEquals(95680443760576L, mach.plugboardKey());
+        Random random = new Random(7);
+        List<Character> letters = new ArrayList<>();
+        for (char c : UPPER_STRING.toCharArray()) {
+            letters.add(c);
+        }
+        for (int trial = 0; trial < 200; trial++) {
+            Collections.shuffle(letters, random);
+            StringBuilder cycles = new StringBuilder();
+            int pairs = random.nextInt(14);
+            for (int i = 0; i < 2 * pairs; i += 2) {
+                cycles.append('(').append(letters.get(i))
+                    .append(letters.get(i + 1)).append(") ");
+            }
+            mach.setPlugboard(new Permutation(cycles.toString(), UPPER));
+            String state = mach.stateKey();
+            long key = mach.plugboardKey();
+            assertTrue(key >= 0 && key < all);
+            mach.setPlugboard(new Permutation("", UPPER));
+            mach.setPlugboardKey(key);
+            assertEquals(state, mach.stateKey());
+            assertEquals(key, mach.plugboardKey());
+        }
+        mach.setPlugboardKey(all - 1);
+        assertEquals(all - 1, mach.plugboardKey());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkPlugboardKeyRange() {
+        Machine mach = new Engine(CribSearchTest.CONFIG).newMachine();
+        mach.setPlugboardKey(532985208200576L);
+    }
+
+    @Test
+    public void checkMetricsCountCharacters() {
+        allRotors.add(reflector);
+        allRotors.add(rotor1);
+        allRotors.add(rotor2);
+        allRotors.add(rotor3);
+        Machine mach = new Machine(alpha, 4, 3, allRotors);
+        mach.insertRotors(new String[]{"reflector", "1", "2", "3"});
+        Metrics metrics = new Metrics();
+        mach.useMetrics(metrics);
+        mach.convert("HELLO WORLD");
+        new Machine(mach).convert("AB");
+        assertEquals(12, metrics.getCharacters());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkDuplicateRotorName() {
+        allRotors.add(reflector);
+        allRotors.add(rotor1);
+        allRotors.add(new MovingRotor("1", permIII, "V"));
+        new Machine(alpha, 3, 2, allRotors);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkUnknownRotor() {
+        allRotors.add(reflector);
+        allRotors.add(rotor1);
+        Machine mach = new Machine(alpha, 2, 1, allRotors);
+        mach.insertRotors(new String[]{"reflector", "2"});
+    }
+
+    @Test
+    public void checkAdvance() {
+        allRotors.add(reflector);
+        allRotors.add(rotorBeta);
+        allRotors.add(_III);
+        allRotors.add(_IV);
+        allRotors.add(rotor1);
+        Machine mach = new Machine(alpha, 5, 3, allRotors);
+        mach.insertRotors(new String[]{"reflector", "Beta", "_III", "_IV",
+                                       "1"});
+        mach.setPlugboard(new Permutation("(YF) (ZH)", UPPER));
+        for (int steps : new int[] {0, 1, 16, 17, 300, 700, 17000}) {
+            mach.setRotors("AUIP");
+            Machine stepped = new Machine(mach);
+            for (int i = 0; i < steps; i++) {
+                stepped.convert(0);
+            }
+            mach.advance(steps);
+            for (int i = 0; i < 5; i++) {
+                assertEquals(msg("advance", "%d steps, rotor %d", steps, i),
+                             stepped.setting(i),
+                             mach.setting(i));
+            }
+            assertEquals(stepped.convert(7), mach.convert(7));
+        }
+    }
+
+    @Test
+    public void checkConvertParallel() {
+        allRotors.add(reflector);
+        allRotors.add(rotorBeta);
+        allRotors.add(_III);
+        allRotors.add(_IV);
+        allRotors.add(rotor1);
+        Machine mach = new Machine(alpha, 5, 3, allRotors);
+        mach.insertRotors(new String[]{"reflector", "Beta", "_III", "_IV",
+                                       "1"});
+        mach.setPlugboard(new Permutation("(YF) (ZH)", UPPER));
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 300000; i++) {
+            msg.append(UPPER_STRING.charAt((i * 11 + i / 97) % 26));
+            if (i % 7 == 0) {
+                msg.append(' ');
+            }
+        }
+        mach.setRotors("AXLE");
+        Machine sequential = new Machine(mach);
+        assertEquals(sequential.convert(msg.toString()),
+                     mach.convertParallel(msg.toString()));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(sequential.setting(i),
+                         mach.setting(i));
+        }
+    }
+
+    @Test
+    public void checkKeystream() {
+        allRotors.add(reflector);
+        allRotors.add(rotorBeta);
+        allRotors.add(_III);
+        allRotors.add(_IV);
+        allRotors.add(rotor1);
+        Machine mach = new Machine(alpha, 5, 3, allRotors);
+        mach.insertRotors(new String[]{"reflector", "Beta", "_III", "_IV",
+                                       "1"});
+        mach.setPlugboard(new Permutation("(YF) (ZH)", UPPER));
+        Machine plain = new Machine(mach);
+        mach.useKeystreams(new KeystreamCache(4, 1 << 20, 0));
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 40000; i++) {
+            msg.append(UPPER_STRING.charAt((i * 5 + i / 31) % 26));
+        }
+        for (int trial = 0; trial < 2; trial++) {
+            mach.setRotors("AXLE");
+            plain.setRotors("AXLE");
+            assertEquals(plain.convert(msg.toString()),
+                         mach.convert(msg.toString()));
+            assertEquals(plain.convert(3), mach.convert(3));
+            assertEquals(plain.convert("HELLO"), mach.convert("HELLO"));
+        }
+    }
+
+    @Test
+    public void checkKeystreamDeferred() {
+        allRotors.add(reflector);
+        allRotors.add(rotorBeta);
+        allRotors.add(_III);
+        allRotors.add(_IV);
+        allRotors.add(rotor1);
+        Machine mach = new Machine(alpha, 5, 3, allRotors);
+        mach.insertRotors(new String[]{"reflector", "Beta", "_III", "_IV",
+                                       "1"});
+        mach.setPlugboard(new Permutation("(YF) (ZH)", UPPER));
+        Machine plain = new Machine(mach);
+        KeystreamCache cache = new KeystreamCache(4, 1 << 20, 1000);
+        mach.useKeystreams(cache);
+        String line = UPPER_STRING.substring(0, 20).repeat(5);
+        mach.setRotors("AXLE");
+        plain.setRotors("AXLE");
+        String key = mach.stateKey();
+        for (int i = 0; i < 9; i++) {
+            assertEquals(plain.convert(line), mach.convert(line));
+        }
+        assertNull(cache.cached(key));
+        for (int i = 0; i < 20; i++) {
+            assertEquals(plain.convert(line), mach.convert(line));
+        }
+        assertNotNull(cache.cached(key));
+
+        mach.setRotors("BXLE");
+        plain.setRotors("BXLE");
+        key = mach.stateKey();
+        assertEquals(plain.convert(line), mach.convert(line));
+        assertNull(cache.cached(key));
+        mach.setRotors("BXLE");
+        plain.setRotors("BXLE");
+        assertNotNull(cache.cached(key));
+        assertEquals(plain.convert(line), mach.convert(line));
+    }
+
+    @Test
+    public void checkKeystreamSharedBuild() throws Exception {
+        allRotors.add(reflector);
+        allRotors.add(rotorBeta);
+        allRotors.add(_III);
+        allRotors.add(_IV);
+        allRotors.add(rotor1);
+        Machine mach = new Machine(alpha, 5, 3, allRotors);
+        mach.insertRotors(new String[]{"reflector", "Beta", "_III", "_IV",
+                                       "1"});
+        mach.setRotors("AXLE");
+        KeystreamCache cache = new KeystreamCache(4, 1 << 20, 0);
+        String key = mach.stateKey();
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch ready = new CountDownLatch(threads);
+            List<Future<Keystream>> builds = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                Machine start = new Machine(mach);
+                builds.add(pool.submit(() -> {
+                    ready.countDown();
+                    ready.await();
+                    return cache.get(key, start);
+                }));
+            }
+            Keystream first = builds.get(0).get();
+            assertNotNull(first);
+            for (Future<Keystream> build : builds) {
+                assertSame(first, build.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void checkConvertBytes() {
+        allRotors.add(reflector);
+        allRotors.add(rotorBeta);
+        allRotors.add(_III);
+        allRotors.add(_IV);
+        allRotors.add(rotor1);
+        Machine mach = new Machine(alpha, 5, 3, allRotors);
+        mach.insertRotors(new String[]{"reflector", "Beta", "_III", "_IV",
+                                       "1"});
+        mach.setPlugboard(new Permutation("(YF) (ZH)", UPPER));
+        Machine chars = new Machine(mach);
+        mach.useKeystreams(new KeystreamCache(4, 1 << 20, 0));
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            msg.append(UPPER_STRING.charAt((i * 3 + i / 29) % 26));
+            if (i % 9 == 0) {
+                msg.append(' ');
+            }
+        }
+        byte[] in = msg.toString().getBytes();
+        byte[] out = new byte[in.length];
+        for (int trial = 0; trial < 2; trial++) {
+            mach.setRotors("AXLE");
+            chars.setRotors("AXLE");
+            String expected = chars.convert(msg.toString());
+            int n = mach.convert(in, 0, in.length, out, 0);
+            assertEquals(expected, new String(out, 0, n));
+            mach.useKeystreams(null);
+        }
+    }
 }
@@ -1,12 +1,35 @@
 package enigma;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
 
-import java.util.ArrayList;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 
 import static enigma.EnigmaException.*;
 
@@ -16,11 +39,23 @@ import static enigma.EnigmaException.*;
 public final class Main {
 
     /** Process a sequence of encryptions and decryptions, as
-     *  specified by ARGS, where 1 <= ARGS.length <= 3.
-     *  ARGS[0] is the name of a configuration file.
-     *  ARGS[1] is optional; when present, it names an input file
+     *  specified by ARGS, which consists of options followed by 1 to 3
+     *  file names.  The option --mmap processes an input file by mapping
+     *  it into memory, when the input is a regular file and the alphabet
+     *  is ASCII.  The option --parallel processes the messages following
+     *  each setting line concurrently, on all available processors, and
+     *  takes precedence over --mmap.  The option --keystream tabulates
+     *  the full cycle of substitutions for a setting line when it is
+     *  repeated or followed by long enough messages, and converts
+     *  messages by table lookup.  The option --stats records the numbers
+     *  of characters, messages, setting lines and bytes processed and the
+     *  times taken to apply settings and convert messages, publishes them
+     *  through JMX as Metrics.OBJECT_NAME, and prints them on the standard
+     *  error periodically and at the end.
+     *  Of the file names, the first is the name of a configuration file.
+     *  The second is optional; when present, it names an input file
      *  containing messages.  Otherwise, input comes from the standard
-     *  input.  ARGS[2] is optional; when present, it names an output
+     *  input.  The third is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
      *  otherwise with code 1. */
@@ -36,6 +71,22 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        int first = 0;
+        while (first < args.length && args[first].startsWith("--")) {
+            if (args[first].equals("--mmap")) {
+                _mapped = true;
+            } else if (args[first].equals("--parallel")) {
+                _parallel = true;
+            } else if (args[first].equals("--keystream")) {
+                _keystreams = true;
+            } else if (args[first].equals("--stats")) {
+                _metrics = new Metrics();
+            } else {
+                throw error("unknown option: %s", args[first]);
+            }
+            first += 1;
+        }
+        args = Arrays.copyOfRange(args, first, args.length);
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
@@ -43,204 +94,688 @@ public final class Main {
         _config = getInput(args[0]);
 
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            _inStream = getInputStream(args[1]);
+            _inFile = new File(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            _inStream = System.in;
         }
+        _input = new InputStreamReader(
+            _metrics == null ? _inStream : _metrics.counting(_inStream));
 
         if (args.length > 2) {
-            _output = getOutput(args[2]);
+            _outStream = getOutput(args[2]);
         } else {
-            _output = System.out;
+            _outStream = System.out;
+        }
+        _output = new OutputStreamWriter(
+            _metrics == null ? _outStream : _metrics.counting(_outStream));
+    }
+
+    /** A Main that applies the setting and message lines in INPUT to a
+     *  machine from ENGINE, writing the results to OUTPUT.  Used by
+     *  processParallel for each block of the input, and by the
+     *  benchmarks. */
+    Main(Engine engine, Reader input, Writer output) {
+        _engine = engine;
+        _input = input;
+        _output = output;
+    }
+
+    /** Return the contents of the file named NAME. */
+    private String getInput(String name) {
+        try {
+            return new String(Files.readAllBytes(new File(name).toPath()),
+                              Charset.defaultCharset());
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Return a stream reading from the file named NAME. */
+    private InputStream getInputStream(String name) {
         try {
-            return new Scanner(new File(name));
+            return new FileInputStream(name);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a stream writing to the file named NAME. */
+    private OutputStream getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            return new FileOutputStream(name);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
+    /** Use THREADS threads in parallel mode, rather than one per
+     *  available processor. */
+    void useThreads(int threads) {
+        _threads = threads;
+    }
+
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
-    private void process() {
-        Machine M = readConfig();
-        boolean hasSet = false;
-        while (_input.hasNextLine()) {
-            String inputLine = _input.nextLine();
-            if (inputLine.length() == 0) {
-                _output.println();
-                continue;
-            }
-            if (inputLine.startsWith("*")) {
-                setUp(M, inputLine);
-                hasSet = true;
-                if (!M.getRotors().get(0).reflecting()) {
-                    throw error("First rotor is not a reflector");
-                }
-                int numMoving = 0;
-                for (int i = 0; i < M.numRotors(); i++) {
-                    if (M.getRotors().get(i).rotates()) {
-                        numMoving += 1;
+     *  results to _output.  Input is read and output written in large
+     *  chunks, and message lines are converted as they are read, so memory
+     *  use does not depend on the size of the input or of its lines. */
+    void process() {
+        _engine = new Engine(_config);
+        Machine M = _engine.newMachine();
+        if (_keystreams) {
+            M.useKeystreams(new KeystreamCache(KEYSTREAM_CACHE_SIZE,
+                                               MAX_KEYSTREAM_ENTRIES,
+                                               MIN_KEYSTREAM_LENGTH));
+        }
+        ScheduledExecutorService reporter = null;
+        if (_metrics != null) {
+            M.useMetrics(_metrics);
+            _metrics.register();
+            reporter = _metrics.startReports(STATS_OUTPUT, STATS_PERIOD);
+        }
+        try {
+            if (_parallel) {
+                processParallel(M);
+            } else if (_mapped && mappable() && isAscii(_engine.alphabet())) {
+                processMapped(M);
+            } else {
+                processStream(M);
+            }
+        } finally {
+            if (reporter != null) {
+                reporter.shutdownNow();
+                _metrics.report(STATS_OUTPUT);
+            }
+        }
+    }
+
+    /** Apply M to the messages in _input as described for process(),
+     *  reading and writing in large chunks. */
+    void processStream(Machine M) {
+        _outBuf = new char[BUFFER_SIZE];
+        try {
+            processLines(M);
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        } finally {
+            try {
+                flushOutput();
+                _output.flush();
+            } catch (IOException excp) {
+                throw error("could not write output");
+            }
+        }
+    }
+
+    /** Process _input as process() does, splitting it into blocks that
+     *  each begin with a setting line, and converting the blocks
+     *  concurrently.  While reading, a copy of M follows the state the
+     *  machine would have if the input were processed in order: it applies
+     *  each setting line and advances by the length of each message line,
+     *  which is much cheaper than converting it.  Each block is converted
+     *  by a fresh copy of that machine as it was at the start of the block,
+     *  so the blocks are independent even when a setting line leaves some
+     *  rotor positions as they were.  Results are written in input
+     *  order. */
+    private void processParallel(Machine M) {
+        ForkJoinPool pool = new ForkJoinPool(_threads);
+        Machine state = new Machine(M);
+        state.useKeystreams(null);
+        ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+        _outBuf = new char[BUFFER_SIZE];
+        try {
+            BufferedReader lines = new BufferedReader(_input, BUFFER_SIZE);
+            StringBuilder block = null;
+            Machine start = null;
+            for (String line = lines.readLine(); line != null;
+                 line = lines.readLine()) {
+                if (line.startsWith("*")) {
+                    if (block != null) {
+                        pending.add(submitBlock(pool, M, start, block));
+                    }
+                    block = new StringBuilder();
+                    start = new Machine(state);
+                    try {
+                        _engine.setUp(state, line);
+                    } catch (EnigmaException excp) {
+                        block.append(line).append('\n');
+                        break;
                     }
+                } else if (block == null) {
+                    if (line.isEmpty()) {
+                        emitLineSeparator();
+                    }
+                    continue;
+                } else {
+                    state.advance(letters(line));
                 }
-                if (numMoving != M.numPawls()) {
-                    throw error("Wrong number of moving rotors");
+                block.append(line).append('\n');
+                while (pending.size() > MAX_PENDING_BLOCKS) {
+                    writeBlock(pending.remove());
                 }
-            } else if (hasSet) {
-                printMessageLine(M.convert(inputLine));
+            }
+            if (block == null) {
+                throw error("Missing setting");
+            }
+            pending.add(submitBlock(pool, M, start, block));
+            while (!pending.isEmpty()) {
+                writeBlock(pending.remove());
+            }
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        } finally {
+            pool.shutdownNow();
+            try {
+                flushOutput();
+                _output.flush();
+            } catch (IOException excp) {
+                throw error("could not write output");
             }
         }
-        if (!hasSet) {
-            throw error("Missing setting");
+    }
+
+    /** Returns the number of characters of the message line LINE that
+     *  are converted, which are those other than spaces. */
+    private static int letters(String line) {
+        int n = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) != ' ') {
+                n += 1;
+            }
         }
+        return n;
+    }
+
+    /** Return the future result of converting the lines in TEXT on POOL,
+     *  using START, a copy of M in the state in which TEXT begins, with
+     *  M's keystreams. */
+    private Future<Block> submitBlock(ForkJoinPool pool, Machine M,
+                                      Machine start, StringBuilder text) {
+        String lines = text.toString();
+        start.useKeystreams(M.keystreams());
+        return pool.submit(() -> {
+            CharArrayWriter out = new CharArrayWriter(lines.length() * 2);
+            Main block = new Main(_engine, new StringReader(lines), out);
+            block._metrics = _metrics;
+            try {
+                block.processStream(start);
+                return new Block(out.toCharArray(), null);
+            } catch (EnigmaException excp) {
+                return new Block(out.toCharArray(), excp);
+            }
+        });
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+    /** Write the output of RESULT, once available, and report its error,
+     *  if any. */
+    private void writeBlock(Future<Block> result) throws IOException {
+        Block block;
         try {
-            _alphabet = new Alphabet(_config.nextLine());
-            int numRotors = _config.nextInt();
-            int numPawls = _config.nextInt();
-            ArrayList<Rotor> allRotors = new ArrayList<>();
-            String currRotorLine = "";
-            if (_config.hasNextLine()) {
-                currRotorLine = _config.nextLine();
-
-            }
-            String nextLine = "some";
-            while (_config.hasNextLine()) {
-                if (!currRotorLine.equals(nextLine)) {
-                    currRotorLine = _config.nextLine();
-                }
+            block = result.get();
+        } catch (InterruptedException | ExecutionException excp) {
+            throw error("internal error: %s", excp.getCause());
+        }
+        flushOutput();
+        _output.write(block.output);
+        if (block.error != null) {
+            throw block.error;
+        }
+    }
 
-                if (_config.hasNextLine()) {
-                    nextLine = _config.nextLine();
-                }
+    /** The result of converting one block of input lines. */
+    private static class Block {
+        /** A block whose converted text is OUTPUT, and which ended with
+         *  ERROR, or null if there was none. */
+        Block(char[] output, EnigmaException error) {
+            this.output = output;
+            this.error = error;
+        }
 
-                if (nextLine.trim().startsWith("(")) {
-                    currRotorLine = currRotorLine + " " + nextLine.trim();
-                    if (_config.hasNextLine()) {
-                        nextLine = _config.nextLine();
-                    }
-                }
+        /** Converted text. */
+        private final char[] output;
+        /** Error reported by the block, or null. */
+        private final EnigmaException error;
+    }
 
-                if (currRotorLine.split(" ").length < 2) {
+    /** Apply the settings lines in _input to M and convert the message
+     *  lines that follow them, writing the results to _outBuf. */
+    private void processLines(Machine M) throws IOException {
+        char[] buf = new char[BUFFER_SIZE];
+        StringBuilder settingLine = new StringBuilder();
+        int kind = LINE_START;
+        boolean hasSet = false, afterReturn = false;
+        for (int n = _input.read(buf); n >= 0; n = _input.read(buf)) {
+            int i = 0;
+            if (afterReturn && n > 0 && buf[0] == '\n') {
+                i = 1;
+            }
+            afterReturn = false;
+            while (i < n) {
+                char c = buf[i];
+                if (c == '\n' || c == '\r') {
+                    hasSet |= endLine(M, kind, settingLine);
+                    kind = LINE_START;
+                    if (c == '\r') {
+                        if (i + 1 == n) {
+                            afterReturn = true;
+                        } else if (buf[i + 1] == '\n') {
+                            i += 1;
+                        }
+                    }
+                    i += 1;
                     continue;
                 }
-                allRotors.add(readRotor(currRotorLine));
-                currRotorLine = nextLine;
-                if (!_config.hasNextLine() && !nextLine.trim().startsWith("(")
-                        && currRotorLine.length() != 0) {
-                    allRotors.add(readRotor(currRotorLine));
+                if (kind == LINE_START) {
+                    kind = c == '*' ? SETTING_LINE
+                        : hasSet ? MESSAGE_LINE : SKIPPED_LINE;
+                }
+                int end = i;
+                while (end < n && buf[end] != '\n' && buf[end] != '\r') {
+                    end += 1;
+                }
+                if (kind == SETTING_LINE) {
+                    settingLine.append(buf, i, end - i);
+                } else if (kind == MESSAGE_LINE) {
+                    convertMessage(M, buf, i, end);
                 }
+                i = end;
             }
-            return new Machine(_alphabet, numRotors, numPawls, allRotors);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+        }
+        if (kind != LINE_START) {
+            hasSet |= endLine(M, kind, settingLine);
+        }
+        if (!hasSet) {
+            throw error("Missing setting");
         }
     }
 
-    /** Return a rotor, reading its description from _config.
-     * @param rotorLine Line of rotor. */
-    private Rotor readRotor(String rotorLine) {
-        try {
-            Scanner rotorSet = new Scanner(rotorLine);
-            String name = rotorSet.next();
-            String typeNotch = rotorSet.next();
-            String cycles = "";
-            while (rotorSet.hasNext()) {
-                String currCycle = rotorSet.next();
-                if (!currCycle.startsWith("(") || !currCycle.endsWith(")")) {
-                    throw error("Bad permutation for rotor");
-                }
-                cycles = cycles + " " + currCycle;
-            }
-            Permutation perm = new Permutation(cycles, _alphabet);
-            if (typeNotch.charAt(0) == 'M') {
-                String notches = typeNotch.substring(1);
-                return new MovingRotor(name, perm, notches);
-            } else if (typeNotch.charAt(0) == 'N') {
-                return new FixedRotor(name, perm);
-            } else {
-                return new Reflector(name, perm);
+    /** Finish an input line of type KIND, applying the setting line held
+     *  in SETTINGLINE to M if it is one.  Returns true iff it was a
+     *  setting line. */
+    private boolean endLine(Machine M, int kind, StringBuilder settingLine)
+        throws IOException {
+        switch (kind) {
+        case SETTING_LINE:
+            setUp(M, settingLine.toString());
+            settingLine.setLength(0);
+            return true;
+        case MESSAGE_LINE:
+            endMessage();
+            if (_groupCount > 0) {
+                emit(' ');
             }
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
+            _groupCount = 0;
+            emitLineSeparator();
+            return false;
+        case LINE_START:
+            emitLineSeparator();
+            return false;
+        default:
+            return false;
         }
     }
 
-    /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
+    /** Apply the setting line SETTINGS to M, recording the time taken
+     *  if there are metrics. */
     private void setUp(Machine M, String settings) {
-        Scanner settingScan = new Scanner(settings);
-        if (settingScan.next().charAt(0) != '*') {
-            throw error("Settings should start with *");
+        if (_metrics == null) {
+            _engine.setUp(M, settings);
+            return;
         }
-        String[] rotorNames = new String[M.numRotors()];
-        for (int i = 0; i < M.numRotors(); i++) {
-            rotorNames[i] = settingScan.next();
+        long start = System.nanoTime();
+        _engine.setUp(M, settings);
+        _metrics.setting(System.nanoTime() - start);
+    }
+
+    /** Record the end of a message line, and the time spent converting
+     *  it, if there are metrics. */
+    private void endMessage() {
+        if (_metrics != null) {
+            _metrics.message(_messageNanos);
+            _messageNanos = 0;
         }
-        String setting = "";
-        String plugboard = "";
-        if (settingScan.hasNext()) {
-            setting = settingScan.next();
-            if (setting.startsWith("(") && setting.endsWith(")")) {
-                plugboard = setting;
-                setting = "";
+    }
+
+    /** Convert the message characters IN[START .. END-1] with M and
+     *  append them to the output in groups of five. */
+    private void convertMessage(Machine M, char[] in, int start, int end)
+        throws IOException {
+        if (_scratch == null || _scratch.length < end - start) {
+            _scratch = new char[Math.max(end - start, BUFFER_SIZE)];
+        }
+        int n;
+        if (_metrics == null) {
+            n = M.convert(in, start, end, _scratch, 0);
+        } else {
+            long begin = System.nanoTime();
+            n = M.convert(in, start, end, _scratch, 0);
+            _messageNanos += System.nanoTime() - begin;
+        }
+        for (int i = 0; i < n; i++) {
+            if (_groupCount == GROUP_SIZE) {
+                emit(' ');
+                _groupCount = 0;
             }
+            emit(_scratch[i]);
+            _groupCount += 1;
         }
+    }
+
+    /** Append C to the output buffer. */
+    private void emit(char c) throws IOException {
+        if (_outLen == _outBuf.length) {
+            flushOutput();
+        }
+        _outBuf[_outLen] = c;
+        _outLen += 1;
+    }
 
-        while (settingScan.hasNext()) {
-            plugboard = plugboard + " " + settingScan.next();
-            if (!plugboard.trim().startsWith("(")
-                    || !plugboard.trim().endsWith(")")) {
-                throw error("Incorrect plugboard input");
+    /** Append a line separator to the output buffer. */
+    private void emitLineSeparator() throws IOException {
+        for (int i = 0; i < LINE_SEPARATOR.length(); i++) {
+            emit(LINE_SEPARATOR.charAt(i));
+        }
+    }
+
+    /** Write the contents of the output buffer to _output. */
+    private void flushOutput() throws IOException {
+        _output.write(_outBuf, 0, _outLen);
+        _outLen = 0;
+    }
+
+    /** Process _input as process() does, reading it from a regular file
+     *  mapped into memory one window at a time and writing the results
+     *  through a direct buffer.  Message characters are converted straight
+     *  from the mapped bytes, so no objects are created per line.  Assumes
+     *  that the alphabet of M is ASCII. */
+    private void processMapped(Machine M) {
+        _outBytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        if (_outStream instanceof FileOutputStream) {
+            _outChannel = ((FileOutputStream) _outStream).getChannel();
+        } else {
+            _outChannel = Channels.newChannel(_outStream);
+        }
+        try {
+            mappedLines(M, ((FileInputStream) _inStream).getChannel());
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        } finally {
+            try {
+                flushBytes();
+                _outStream.flush();
+            } catch (IOException excp) {
+                throw error("could not write output");
             }
         }
-        Permutation plugboardPerm = new Permutation(plugboard, _alphabet);
-        M.insertRotors(rotorNames);
-        M.setPlugboard(plugboardPerm);
-        M.setRotors(setting);
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        String result = "";
-        for (int i = 0; i < msg.length(); i += 5) {
-            if (i + 5 >= msg.length()) {
-                result = result + msg.substring(i) + " ";
+    /** Apply the setting lines in IN to M and convert the message lines
+     *  that follow them, as for processLines. */
+    private void mappedLines(Machine M, FileChannel in) throws IOException {
+        ByteArrayOutputStream settingLine = new ByteArrayOutputStream();
+        int kind = LINE_START;
+        boolean hasSet = false;
+        byte prev = 0;
+        for (long pos = in.position(), size = in.size(); pos < size;
+             pos += MAP_WINDOW) {
+            MappedByteBuffer window =
+                in.map(FileChannel.MapMode.READ_ONLY, pos,
+                       Math.min(MAP_WINDOW, size - pos));
+            int n = window.limit();
+            if (_metrics != null) {
+                _metrics.read(n);
+            }
+            int i = 0;
+            if (prev == '\r' && n > 0 && window.get(0) == '\n') {
+                i = 1;
+            }
+            while (i < n) {
+                byte b = window.get(i);
+                if (b == '\n' || b == '\r') {
+                    hasSet |= endMappedLine(M, kind, settingLine);
+                    kind = LINE_START;
+                    if (b == '\r' && i + 1 < n && window.get(i + 1) == '\n') {
+                        i += 1;
+                    }
+                    i += 1;
+                    continue;
+                }
+                if (kind == LINE_START) {
+                    kind = b == '*' ? SETTING_LINE
+                        : hasSet ? MESSAGE_LINE : SKIPPED_LINE;
+                }
+                int end = i;
+                while (end < n && window.get(end) != '\n'
+                       && window.get(end) != '\r') {
+                    end += 1;
+                }
+                if (kind == SETTING_LINE) {
+                    for (int k = i; k < end; k++) {
+                        settingLine.write(window.get(k));
+                    }
+                } else if (kind == MESSAGE_LINE) {
+                    convertBytes(M, window, i, end);
+                }
+                i = end;
+            }
+            prev = n > 0 ? window.get(n - 1) : prev;
+        }
+        if (kind != LINE_START) {
+            hasSet |= endMappedLine(M, kind, settingLine);
+        }
+        if (!hasSet) {
+            throw error("Missing setting");
+        }
+    }
+
+    /** Finish an input line of type KIND as for endLine, where
+     *  SETTINGLINE holds the bytes of a setting line. Returns true iff it
+     *  was a setting line. */
+    private boolean endMappedLine(Machine M, int kind,
+                                  ByteArrayOutputStream settingLine)
+        throws IOException {
+        switch (kind) {
+        case SETTING_LINE:
+            setUp(M, settingLine.toString(Charset.defaultCharset()));
+            settingLine.reset();
+            return true;
+        case MESSAGE_LINE:
+            endMessage();
+            if (_groupCount > 0) {
+                emitByte(' ');
+            }
+            _groupCount = 0;
+            emitByteLineSeparator();
+            return false;
+        case LINE_START:
+            emitByteLineSeparator();
+            return false;
+        default:
+            return false;
+        }
+    }
+
+    /** Convert the message bytes IN[START .. END-1] with M and append
+     *  them to _outBytes in groups of five. */
+    private void convertBytes(Machine M, ByteBuffer in, int start, int end)
+        throws IOException {
+        if (_inBytes == null) {
+            _inBytes = new byte[BUFFER_SIZE];
+            _convBytes = new byte[BUFFER_SIZE];
+        }
+        for (int i = start; i < end; i += BUFFER_SIZE) {
+            int len = Math.min(BUFFER_SIZE, end - i);
+            in.get(i, _inBytes, 0, len);
+            int n;
+            if (_metrics == null) {
+                n = M.convert(_inBytes, 0, len, _convBytes, 0);
             } else {
-                result = result + msg.substring(i, i + 5) + " ";
+                long begin = System.nanoTime();
+                n = M.convert(_inBytes, 0, len, _convBytes, 0);
+                _messageNanos += System.nanoTime() - begin;
+            }
+            for (int k = 0; k < n; k++) {
+                if (_groupCount == GROUP_SIZE) {
+                    emitByte(' ');
+                    _groupCount = 0;
+                }
+                emitByte((char) _convBytes[k]);
+                _groupCount += 1;
+            }
+        }
+    }
+
+    /** Append the ASCII character C to _outBytes. */
+    private void emitByte(char c) throws IOException {
+        if (!_outBytes.hasRemaining()) {
+            flushBytes();
+        }
+        _outBytes.put((byte) c);
+    }
+
+    /** Append a line separator to _outBytes. */
+    private void emitByteLineSeparator() throws IOException {
+        for (int i = 0; i < LINE_SEPARATOR.length(); i++) {
+            emitByte(LINE_SEPARATOR.charAt(i));
+        }
+    }
+
+    /** Write the contents of _outBytes to _outChannel. */
+    private void flushBytes() throws IOException {
+        _outBytes.flip();
+        if (_metrics != null) {
+            _metrics.wrote(_outBytes.remaining());
+        }
+        while (_outBytes.hasRemaining()) {
+            _outChannel.write(_outBytes);
+        }
+        _outBytes.clear();
+    }
+
+    /** Returns true iff the input can be mapped into memory: it was
+     *  opened from a named regular file, rather than being the standard
+     *  input, a pipe or a device, whose contents cannot be mapped. */
+    private boolean mappable() {
+        return _inStream instanceof FileInputStream && _inFile != null
+            && Files.isRegularFile(_inFile.toPath());
+    }
+
+    /** Returns true iff every character of ALPHABET is ASCII. */
+    private static boolean isAscii(Alphabet alphabet) {
+        for (int i = 0; i < alphabet.size(); i++) {
+            if (alphabet.toChar(i) >= ASCII_SIZE) {
+                return false;
             }
         }
-        _output.println(result);
+        return true;
     }
 
-    /** Alphabet used in this machine. */
-    private Alphabet _alphabet;
+    /** The configuration read from _config. */
+    private Engine _engine;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private Reader _input;
+
+    /** The stream underlying _input. */
+    private InputStream _inStream;
+
+    /** The input file, or null if input is from the standard input. */
+    private File _inFile;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** Contents of the configuration file. */
+    private String _config;
 
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private Writer _output;
+
+    /** The stream underlying _output. */
+    private OutputStream _outStream;
+
+    /** True iff the input file is to be processed by mapping it into
+     *  memory. */
+    private boolean _mapped;
+
+    /** True iff the blocks of input following each setting line are to be
+     *  processed concurrently. */
+    private boolean _parallel;
+
+    /** Number of threads used in parallel mode. */
+    private int _threads = Runtime.getRuntime().availableProcessors();
+
+    /** True iff messages are to be converted using keystreams. */
+    private boolean _keystreams;
+
+    /** Where counts and latencies are recorded, or null if they are
+     *  not. */
+    private Metrics _metrics;
+
+    /** Time spent so far converting the current message line, in
+     *  nanoseconds, if there are metrics. */
+    private long _messageNanos;
+
+    /** In mapped mode, message bytes being converted and their
+     *  conversions. */
+    private byte[] _inBytes, _convBytes;
+
+    /** In mapped mode, output not yet written to _outChannel. */
+    private ByteBuffer _outBytes;
+
+    /** In mapped mode, the channel for encoded/decoded messages. */
+    private WritableByteChannel _outChannel;
+
+    /** Output not yet written to _output. */
+    private char[] _outBuf;
+
+    /** Converted message characters not yet grouped into _outBuf. */
+    private char[] _scratch;
+
+    /** Number of characters in _outBuf. */
+    private int _outLen;
+
+    /** Number of characters in the last group of the current output
+     *  line. */
+    private int _groupCount;
+
+    /** Size of the input and output buffers. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Number of bytes of input mapped into memory at a time. */
+    private static final long MAP_WINDOW = 1 << 26;
+
+    /** Largest number of blocks converted ahead of the output in parallel
+     *  mode. */
+    private static final int MAX_PENDING_BLOCKS =
+        4 * Runtime.getRuntime().availableProcessors();
+
+    /** Number of keystreams kept for reuse in keystream mode. */
+    private static final int KEYSTREAM_CACHE_SIZE = 16;
+
+    /** Largest number of table entries in a keystream (4 MB). */
+    private static final int MAX_KEYSTREAM_ENTRIES = 1 << 20;
+
+    /** Fewest characters converted under a setting used once for which
+     *  its keystream is built in keystream mode. */
+    private static final int MIN_KEYSTREAM_LENGTH = 1 << 14;
+
+    /** Seconds between the reports printed with --stats. */
+    private static final long STATS_PERIOD = 5;
+
+    /** Where the reports printed with --stats go. */
+    private static final PrintStream STATS_OUTPUT = System.err;
+
+    /** Number of ASCII characters. */
+    private static final int ASCII_SIZE = 128;
+
+    /** Number of characters in each group of an output line. */
+    private static final int GROUP_SIZE = 5;
+
+    /** Line separator written after each output line. */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /** Kinds of input line: one of which nothing has yet been read, a
+     *  setting line, a message line, and a message line before the first
+     *  setting, which is ignored. */
+    private static final int LINE_START = 0, SETTING_LINE = 1,
+        MESSAGE_LINE = 2, SKIPPED_LINE = 3;
 }
@@ -0,0 +1,135 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/** The suite of all JUnit tests for the Main class.
+ *  @author Christopher Lee
+ */
+public class MainTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Directory for the files of each test. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Number of threads used in parallel mode, more than one even on a
+     *  single processor. */
+    static final int THREADS = 8;
+
+    /** Input messages. */
+    static final String INPUT =
+        "* B III I QD (AT) (KM)\n"
+        + "ATTACK AT DAWN\n"
+        + "ON THE EASTERN FRONT\n";
+
+    /** Returns the output of Main run with OPTION on configuration file
+     *  CONFIG and input file INPUT. */
+    private String run(String option, File config, File input)
+        throws IOException {
+        File output = folder.newFile();
+        String[] args = { option, config.getPath(), input.getPath(),
+                          output.getPath() };
+        if (option == null) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        Main main = new Main(args);
+        main.useThreads(THREADS);
+        main.process();
+        return new String(Files.readAllBytes(output.toPath()),
+                          Charset.defaultCharset());
+    }
+
+    /** Returns a new file containing TEXT. */
+    private File write(String text) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), text.getBytes());
+        return file;
+    }
+
+    @Test
+    public void checkPartialSettings() throws Exception {
+        File config = write(CribSearchTest.CONFIG);
+        File input = write("* B I II QD\n"
+                           + "HELLO WORLD\n"
+                           + "* B III I AB\n"
+                           + "HELLO WORLD\n"
+                           + "* B II III\n"
+                           + "HELLO WORLD\n"
+                           + "* B I II CC\n"
+                           + "HELLO WORLD\n"
+                           + "* B II III\n"
+                           + "HELLO WORLD\n");
+        String expected =
+            String.join(System.lineSeparator(), "XZTWB BMNHJ ",
+                        "KDEGW OIYUT ", "MKRWQ SXSOC ", "CIPNQ FFAWX ",
+                        "GHYFD XANXJ ", "");
+        assertEquals(expected, run(null, config, input));
+        for (String option : new String[] { "--parallel", "--mmap",
+                                            "--keystream" }) {
+            assertEquals(option, expected, run(option, config, input));
+        }
+    }
+
+    @Test
+    public void checkParallelKeepsRotorPositions() throws Exception {
+        File config = write(CribSearchTest.CONFIG);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append(i % 2 == 0 ? "* B I II QD\n" : "* B III I AB\n")
+                .append("HELLO WORLD\n")
+                .append("* B II III\n")
+                .append("HELLO WORLD\n");
+        }
+        File input = write(text.toString());
+        String expected = run(null, config, input);
+        for (int trial = 0; trial < 3; trial++) {
+            assertEquals(expected, run("--parallel", config, input));
+        }
+    }
+
+    @Test
+    public void checkMappedFifo() throws Exception {
+        File config = folder.newFile();
+        Files.write(config.toPath(), CribSearchTest.CONFIG.getBytes());
+        File regular = folder.newFile();
+        Files.write(regular.toPath(), INPUT.getBytes());
+        String expected = run("--mmap", config, regular);
+        assertEquals(expected, run("--parallel", config, regular));
+
+        File fifo = new File(folder.getRoot(), "fifo");
+        int status;
+        try {
+            status = new ProcessBuilder("mkfifo", fifo.getPath())
+                .start().waitFor();
+        } catch (IOException excp) {
+            status = -1;
+        }
+        assumeTrue(status == 0);
+        Thread writer = new Thread(() -> {
+            try (OutputStream out = new FileOutputStream(fifo)) {
+                out.write(INPUT.getBytes());
+            } catch (IOException excp) {
+                throw new AssertionError(excp);
+            }
+        });
+        writer.start();
+        assertEquals(expected, run("--mmap", config, fifo));
+        writer.join();
+    }
+}
@@ -0,0 +1,231 @@
+package enigma;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import static enigma.EnigmaException.*;
+
+/** Counts and latencies of a conversion run, shared by the threads doing
+ *  it.  Nothing is recorded unless a Metrics is given to the machines and
+ *  to Main; when none is, the only cost is a test for null per bulk
+ *  conversion.  The counts may be read through JMX, as the MBean
+ *  OBJECT_NAME, or printed periodically.
+ *  @author Christopher Lee
+ */
+class Metrics implements MetricsMBean {
+
+    /** Record the conversion of N characters. */
+    void converted(int n) {
+        _characters.add(n);
+    }
+
+    /** Record the conversion of a message line taking NANOS ns. */
+    void message(long nanos) {
+        _messages.increment();
+        _conversion.record(nanos);
+    }
+
+    /** Record the application of a setting line taking NANOS ns. */
+    void setting(long nanos) {
+        _settingLines.increment();
+        _setup.record(nanos);
+    }
+
+    /** Record the writing of N bytes of output. */
+    void wrote(long n) {
+        _bytesOut.add(n);
+    }
+
+    /** Record the reading of N bytes of input. */
+    void read(long n) {
+        _bytesIn.add(n);
+    }
+
+    /** Returns a stream reading IN and recording the bytes read. */
+    InputStream counting(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    Metrics.this.read(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) throws IOException {
+                int n = super.read(buf, off, len);
+                if (n > 0) {
+                    Metrics.this.read(n);
+                }
+                return n;
+            }
+        };
+    }
+
+    /** Returns a stream writing to OUT and recording the bytes written. */
+    OutputStream counting(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                wrote(1);
+            }
+
+            @Override
+            public void write(byte[] buf, int off, int len)
+                throws IOException {
+                out.write(buf, off, len);
+                wrote(len);
+            }
+        };
+    }
+
+    /** Register me with the platform MBean server as OBJECT_NAME,
+     *  replacing any metrics registered before. */
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new StandardMBean(this, MetricsMBean.class),
+                                 name);
+        } catch (JMException excp) {
+            throw error("could not register metrics: %s", excp.getMessage());
+        }
+    }
+
+    /** Print a report of my contents on OUT every PERIOD seconds, from a
+     *  daemon thread, until the returned executor is shut down. */
+    ScheduledExecutorService startReports(PrintStream out, long period) {
+        ScheduledExecutorService reporter =
+            Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "enigma-stats");
+                thread.setDaemon(true);
+                return thread;
+            });
+        reporter.scheduleAtFixedRate(() -> report(out), period, period,
+                                     TimeUnit.SECONDS);
+        return reporter;
+    }
+
+    /** Print a one-line report of my contents on OUT. */
+    void report(PrintStream out) {
+        out.printf("enigma: %d chars (%.0f/s), %d messages, %d settings, "
+                   + "%d bytes in, %d bytes out; setup %s; convert %s%n",
+                   getCharacters(), getCharactersPerSecond(), getMessages(),
+                   getSettingLines(), getBytesIn(), getBytesOut(),
+                   _setup.summary(), _conversion.summary());
+    }
+
+    @Override
+    public long getCharacters() {
+        return _characters.sum();
+    }
+
+    @Override
+    public double getCharactersPerSecond() {
+        double seconds = (System.nanoTime() - _start) / NANOS_PER_SECOND;
+        return seconds <= 0 ? 0 : getCharacters() / seconds;
+    }
+
+    @Override
+    public long getMessages() {
+        return _messages.sum();
+    }
+
+    @Override
+    public long getSettingLines() {
+        return _settingLines.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return _bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return _bytesOut.sum();
+    }
+
+    @Override
+    public long getSetupMedianNanos() {
+        return _setup.quantile(MEDIAN);
+    }
+
+    @Override
+    public long getSetupP99Nanos() {
+        return _setup.quantile(P99);
+    }
+
+    @Override
+    public long getConversionMedianNanos() {
+        return _conversion.quantile(MEDIAN);
+    }
+
+    @Override
+    public long getConversionP99Nanos() {
+        return _conversion.quantile(P99);
+    }
+
+    @Override
+    public long[] getSetupLatencyHistogram() {
+        return _setup.counts();
+    }
+
+    @Override
+    public long[] getConversionLatencyHistogram() {
+        return _conversion.counts();
+    }
+
+    /** Name under which metrics are registered with JMX. */
+    static final String OBJECT_NAME = "enigma:type=Metrics";
+
+    /** Quantiles reported through JMX. */
+    private static final double MEDIAN = 0.5, P99 = 0.99;
+
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /** Time at which I was created, as from System.nanoTime. */
+    private final long _start = System.nanoTime();
+
+    /** Characters converted. */
+    private final LongAdder _characters = new LongAdder();
+
+    /** Message lines converted. */
+    private final LongAdder _messages = new LongAdder();
+
+    /** Setting lines applied. */
+    private final LongAdder _settingLines = new LongAdder();
+
+    /** Bytes of input read. */
+    private final LongAdder _bytesIn = new LongAdder();
+
+    /** Bytes of output written. */
+    private final LongAdder _bytesOut = new LongAdder();
+
+    /** Times to apply setting lines. */
+    private final Histogram _setup = new Histogram();
+
+    /** Times to convert message lines. */
+    private final Histogram _conversion = new Histogram();
+}
@@ -0,0 +1,52 @@
+package enigma;
+
+/** The management interface of Metrics, through which JMX clients read
+ *  the counts and latencies of a running conversion.  Latencies are in
+ *  nanoseconds.
+ *  @author Christopher Lee
+ */
+public interface MetricsMBean {
+
+    /** Returns the number of characters converted. */
+    long getCharacters();
+
+    /** Returns the number of characters converted per second, averaged
+     *  since the metrics were created. */
+    double getCharactersPerSecond();
+
+    /** Returns the number of message lines converted. */
+    long getMessages();
+
+    /** Returns the number of setting lines applied. */
+    long getSettingLines();
+
+    /** Returns the number of bytes of input read. */
+    long getBytesIn();
+
+    /** Returns the number of bytes of output written. */
+    long getBytesOut();
+
+    /** Returns an upper bound on the median time to apply a setting
+     *  line. */
+    long getSetupMedianNanos();
+
+    /** Returns an upper bound on the 99th percentile of the time to apply
+     *  a setting line. */
+    long getSetupP99Nanos();
+
+    /** Returns an upper bound on the median time to convert a message
+     *  line. */
+    long getConversionMedianNanos();
+
+    /** Returns an upper bound on the 99th percentile of the time to
+     *  convert a message line. */
+    long getConversionP99Nanos();
+
+    /** Returns the histogram of times to apply a setting line, as
+     *  described for Histogram.counts. */
+    long[] getSetupLatencyHistogram();
+
+    /** Returns the histogram of times to convert a message line, as
+     *  described for Histogram.counts. */
+    long[] getConversionLatencyHistogram();
+}
@@ -1,7 +1,5 @@
 package enigma;
 
-import java.util.Arrays;
-
 import static enigma.EnigmaException.*;
 
 /** Class that represents a rotating rotor in the enigma machine.
@@ -11,18 +9,27 @@ class MovingRotor extends Rotor {
 
     /** A rotor named NAME whose permutation in its default setting is
      *  PERM, and whose notches are at the positions indicated in NOTCHES.
-     *  The Rotor is initally in its 0 setting (first character of its
-     *  alphabet).
      */
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
-        _notch = notches.split("");
-        set(0);
-    }
-
-    @Override
-    void advance() {
-        set(permutation().wrap(setting() + 1));
+        int n = perm.size();
+        _atNotch = new boolean[n];
+        for (int i = 0; i < notches.length(); i++) {
+            int posn = alphabet().toInt(notches.charAt(i));
+            if (posn >= 0) {
+                _atNotch[posn] = true;
+            }
+        }
+        _toNotch = new int[n];
+        int next = -1;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int posn = n - 1; posn >= 0; posn--) {
+                if (_atNotch[posn]) {
+                    next = posn;
+                }
+                _toNotch[posn] = next < 0 ? -1 : (next - posn + n) % n;
+            }
+        }
     }
 
     /** Return true iff I have a ratchet and can move. */
@@ -31,14 +38,20 @@ class MovingRotor extends Rotor {
         return true;
     }
 
-    /** Returns true iff I am positioned to allow the rotor to my left
-     *  to advance. */
     @Override
-    boolean atNotch() {
-        return Arrays.asList(_notch).contains(Character
-                        .toString(permutation().alphabet().toChar(setting())));
+    boolean atNotch(int posn) {
+        return _atNotch[posn];
     }
 
-    /** Notch of rotor. */
-    private String[] _notch;
+    @Override
+    int stepsToNotch(int posn) {
+        return _toNotch[posn];
+    }
+
+    /** _atNotch[P] is true iff setting P is at a notch. */
+    private final boolean[] _atNotch;
+
+    /** _toNotch[P] is the number of advances from setting P to the next
+     *  setting at a notch (0 if P is at one), or -1 if I have no notches. */
+    private final int[] _toNotch;
 }
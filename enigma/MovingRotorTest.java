@@ -24,10 +24,10 @@ public class MovingRotorTest {
     private String alpha = UPPER_STRING;
 
     /** Check that rotor has an alphabet whose size is that of
-     *  FROMALPHA and TOALPHA and that maps each character of
-     *  FROMALPHA to the corresponding character of FROMALPHA, and
-     *  vice-versa. TESTID is used in error messages. */
-    private void checkRotor(String testId,
+     *  FROMALPHA and TOALPHA and that, at setting POSN, maps each
+     *  character of FROMALPHA to the corresponding character of FROMALPHA,
+     *  and vice-versa. TESTID is used in error messages. */
+    private void checkRotor(String testId, int posn,
                             String fromAlpha, String toAlpha) {
         int N = fromAlpha.length();
         assertEquals(testId + " (wrong length)", N, rotor.size());
@@ -35,9 +35,9 @@ public class MovingRotorTest {
             char c = fromAlpha.charAt(i), e = toAlpha.charAt(i);
             int ci = alpha.indexOf(c), ei = alpha.indexOf(e);
             assertEquals(msg(testId, "wrong translation of %d (%c)", ci, c),
-                         ei, rotor.convertForward(ci));
+                         ei, rotor.convertForward(ci, posn));
             assertEquals(msg(testId, "wrong inverse of %d (%c)", ei, e),
-                         ci, rotor.convertBackward(ei));
+                         ci, rotor.convertBackward(ei, posn));
         }
     }
 
@@ -54,21 +54,19 @@ public class MovingRotorTest {
     @Test
     public void checkRotorAtA() {
         setRotor("I", NAVALA, "");
-        checkRotor("Rotor I (A)", UPPER_STRING, NAVALA_MAP.get("I"));
+        checkRotor("Rotor I (A)", 0, UPPER_STRING, NAVALA_MAP.get("I"));
     }
 
     @Test
     public void checkRotorAdvance() {
         setRotor("I", NAVALA, "");
-        rotor.advance();
-        checkRotor("Rotor I advanced", UPPER_STRING, NAVALB_MAP.get("I"));
+        checkRotor("Rotor I advanced", 1, UPPER_STRING, NAVALB_MAP.get("I"));
     }
 
     @Test
     public void checkRotorSet() {
         setRotor("I", NAVALA, "");
-        rotor.set(25);
-        checkRotor("Rotor I set", UPPER_STRING, NAVALZ_MAP.get("I"));
+        checkRotor("Rotor I set", 25, UPPER_STRING, NAVALZ_MAP.get("I"));
     }
 
     @Test
@@ -76,17 +74,22 @@ public class MovingRotorTest {
         Permutation perm = new Permutation("(AELTPHQXRU) (BKNW) (CMOY) "
                 + "(DFG) (IV) (JZ) (S)", UPPER);
         rotor = new MovingRotor("Chris", perm, "XABCS");
-        assertEquals(0, rotor.setting());
-        assertEquals('A', rotor.permutation()
-                .alphabet().toChar(rotor.setting()));
-        assertTrue(rotor.atNotch());
-        rotor.advance();
-        assertEquals(1, rotor.setting());
-        assertTrue(rotor.atNotch());
-        rotor.advance();
-        assertTrue(rotor.atNotch());
-        rotor.set('D');
-        assertFalse(rotor.atNotch());
+        assertTrue(rotor.atNotch(0));
+        assertTrue(rotor.atNotch(1));
+        assertTrue(rotor.atNotch(2));
+        assertFalse(rotor.atNotch(UPPER.toInt('D')));
+        assertTrue(rotor.atNotch(UPPER.toInt('S')));
+    }
+
+
+    @Test
+    public void checkStepsToNotch() {
+        setRotor("I", NAVALA, "QZ");
+        assertEquals(16, rotor.stepsToNotch(0));
+        assertEquals(0, rotor.stepsToNotch(UPPER.toInt('Q')));
+        assertEquals(8, rotor.stepsToNotch(UPPER.toInt('R')));
+        setRotor("I", NAVALA, "");
+        assertEquals(-1, rotor.stepsToNotch(0));
     }
 
 }
@@ -0,0 +1,123 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The log probabilities of the sequences of ORDER letters (bigrams,
+ *  trigrams or quadgrams) of a language, estimated from a sample of it.
+ *  The table is a flat array with one entry for every sequence, the
+ *  sequence of letters with alphabet indices A, B, ... being at index
+ *  (A * N + B) * N + ..., where N is the size of the alphabet, so scoring
+ *  a letter sequence is a few multiplications and one array load.
+ *  Sequences absent from the sample get a floor probability of FLOOR
+ *  occurrences in it.
+ *  @author Christopher Lee
+ */
+class NGramTable {
+
+    /** The table of sequences of ORDER letters in ALPHABET, as they occur
+     *  in CORPUS.  Characters of CORPUS that are not in ALPHABET, even in
+     *  upper case, are skipped. */
+    NGramTable(Alphabet alphabet, int order, String corpus) {
+        if (order < MIN_ORDER || order > MAX_ORDER) {
+            throw error("n-grams must have %d to %d letters", MIN_ORDER,
+                        MAX_ORDER);
+        }
+        int n = alphabet.size();
+        long entries = 1;
+        for (int i = 0; i < order; i++) {
+            entries *= n;
+            if (entries > MAX_ENTRIES) {
+                throw error("too many %d-grams of %d letters", order, n);
+            }
+        }
+        _alphabet = alphabet;
+        _order = order;
+        _size = n;
+        int mod = (int) (entries / n);
+        int[] counts = new int[(int) entries];
+        long total = 0;
+        int index = 0, run = 0;
+        for (int i = 0; i < corpus.length(); i++) {
+            char c = corpus.charAt(i);
+            int k = alphabet.toInt(c);
+            if (k < 0) {
+                k = alphabet.toInt(Character.toUpperCase(c));
+            }
+            if (k < 0) {
+                continue;
+            }
+            index = (index % mod) * n + k;
+            run += 1;
+            if (run >= order) {
+                counts[index] += 1;
+                total += 1;
+            }
+        }
+        if (total == 0) {
+            throw error("sample has no %d-letter sequences", order);
+        }
+        _logProbs = new float[counts.length];
+        double floor = Math.log(FLOOR / total);
+        for (int i = 0; i < counts.length; i++) {
+            _logProbs[i] = (float) (counts[i] == 0 ? floor
+                                    : Math.log((double) counts[i] / total));
+        }
+    }
+
+    /** Returns the number of letters in my sequences. */
+    int order() {
+        return _order;
+    }
+
+    /** Returns my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Returns the log probability of the sequence of letters whose
+     *  alphabet indices are TEXT[START .. START + order() - 1]. */
+    float logProb(int[] text, int start) {
+        int index = 0;
+        for (int i = start; i < start + _order; i++) {
+            index = index * _size + text[i];
+        }
+        return _logProbs[index];
+    }
+
+    /** Returns the sum of the log probabilities of all the sequences of
+     *  order() letters in TEXT, as alphabet indices. */
+    double score(int[] text) {
+        double result = 0;
+        for (int s = 0; s + _order <= text.length; s++) {
+            result += logProb(text, s);
+        }
+        return result;
+    }
+
+    /** Returns the entry for the sequence at INDEX, as described
+     *  above. */
+    float logProb(int index) {
+        return _logProbs[index];
+    }
+
+    /** Fewest and most letters in a sequence. */
+    static final int MIN_ORDER = 2, MAX_ORDER = 4;
+
+    /** Most entries in a table. */
+    private static final long MAX_ENTRIES = 1 << 24;
+
+    /** Notional number of occurrences of absent sequences. */
+    private static final double FLOOR = 0.01;
+
+    /** The alphabet of my sequences. */
+    private final Alphabet _alphabet;
+
+    /** Number of letters in my sequences. */
+    private final int _order;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Log probability of each sequence, indexed as described above. */
+    private final float[] _logProbs;
+}
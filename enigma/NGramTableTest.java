@@ -0,0 +1,36 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the NGramTable class.
+ *  @author Christopher Lee
+ */
+public class NGramTableTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void checkLogProbs() {
+        Alphabet alphabet = new Alphabet("ABC");
+        NGramTable table = new NGramTable(alphabet, 2, "ab, AB! ac");
+        assertEquals(2, table.order());
+        assertEquals(Math.log(2.0 / 5), table.logProb(new int[] {0, 1}, 0),
+                     1e-6);
+        assertEquals(Math.log(2.0 / 5), table.logProb(1 * 3 + 0), 1e-6);
+        assertEquals(Math.log(1.0 / 5), table.logProb(0 * 3 + 2), 1e-6);
+        assertEquals(Math.log(0.01 / 5), table.logProb(new int[] {2, 2}, 0),
+                     1e-6);
+        assertEquals(Math.log(2.0 / 5) * 3,
+                     table.score(new int[] {0, 1, 0, 1}), 1e-5);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkBadOrder() {
+        new NGramTable(new Alphabet("ABC"), 5, "ABCABC");
+    }
+}
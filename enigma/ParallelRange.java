@@ -0,0 +1,44 @@
+package enigma;
+
+import java.util.concurrent.RecursiveAction;
+
+/** The action of doing a range of numbered tasks on a ForkJoinPool,
+ *  split in halves until each part is a single task, so that idle
+ *  threads steal the larger parts.  Used by the searches to run one task
+ *  per rotor order and starting position, crib or restart.
+ *  @author Christopher Lee
+ */
+class ParallelRange extends RecursiveAction {
+
+    /** A consumer of task numbers. */
+    interface Task {
+        /** Do task number TASK. */
+        void run(int task);
+    }
+
+    /** An action doing tasks LO .. HI-1 with TASK. */
+    ParallelRange(int lo, int hi, Task task) {
+        _lo = lo;
+        _hi = hi;
+        _task = task;
+    }
+
+    @Override
+    protected void compute() {
+        if (_hi - _lo == 1) {
+            _task.run(_lo);
+        } else if (_hi > _lo) {
+            int mid = (_lo + _hi) >>> 1;
+            invokeAll(new ParallelRange(_lo, mid, _task),
+                      new ParallelRange(mid, _hi, _task));
+        }
+    }
+
+    /** Version of my serialized form. */
+    private static final long serialVersionUID = 1L;
+
+    /** Bounds of my tasks. */
+    private final int _lo, _hi;
+    /** Does each task. */
+    private final transient Task _task;
+}
@@ -1,5 +1,8 @@
 package enigma;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
@@ -16,7 +19,67 @@ class Permutation {
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
         _cycles = cycles;
-        _eachCycle = _cycles.replaceAll("[()]", "").split(" ");
+        _eachCycle = splitCycles(cycles);
+        compile();
+    }
+
+    /** Returns the cycles named in CYCLES, where parentheses and
+     *  whitespace both separate one cycle from the next. */
+    private static String[] splitCycles(String cycles) {
+        ArrayList<String> result = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= cycles.length(); i++) {
+            boolean separator = i == cycles.length()
+                || cycles.charAt(i) == '(' || cycles.charAt(i) == ')'
+                || Character.isWhitespace(cycles.charAt(i));
+            if (separator && start >= 0) {
+                result.add(cycles.substring(start, i));
+                start = -1;
+            } else if (!separator && start < 0) {
+                start = i;
+            }
+        }
+        return result.toArray(new String[0]);
+    }
+
+    /** Rebuild _forward and _inverse from _eachCycle.  When a character
+     *  appears in more than one cycle, the first cycle containing it
+     *  determines its image, as it always has. */
+    private void compile() {
+        int n = size();
+        _forward = new int[n];
+        _inverse = new int[n];
+        Arrays.fill(_forward, -1);
+        Arrays.fill(_inverse, -1);
+        for (String group : _eachCycle) {
+            int len = group.length();
+            for (int k = 0; k < len; k++) {
+                int from = index(group.charAt(k));
+                if (_forward[from] < 0) {
+                    _forward[from] = index(group.charAt((k + 1) % len));
+                }
+                if (_inverse[from] < 0) {
+                    _inverse[from] = index(group.charAt((k + len - 1) % len));
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (_forward[i] < 0) {
+                _forward[i] = i;
+            }
+            if (_inverse[i] < 0) {
+                _inverse[i] = i;
+            }
+        }
+    }
+
+    /** Returns the index of C in my alphabet, which must contain it. */
+    private int index(char c) {
+        int result = _alphabet.toInt(c);
+        if (result < 0) {
+            throw error("character '%c' is not in the alphabet", c);
+        }
+        return result;
     }
 
     /** Returns each cycle of a permutation. */
@@ -33,6 +96,7 @@ class Permutation {
         }
         newEachCycle[_eachCycle.length] = cycle;
         _eachCycle = newEachCycle;
+        compile();
     }
 
     /** Adds missing cycles that are contained in the _alphabet. */
@@ -70,52 +134,50 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char inputChar = _alphabet.toChar(wrap(p));
-        char outputChar = permute(inputChar);
-        return _alphabet.toInt(outputChar);
+        if (p >= 0 && p < _forward.length) {
+            return _forward[p];
+        }
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char inputChar = _alphabet.toChar(wrap(c));
-        char outputChar = invert(inputChar);
-        return _alphabet.toInt(outputChar);
+        if (c >= 0 && c < _inverse.length) {
+            return _inverse[c];
+        }
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        char permutedChar = p;
-        for (String group : _eachCycle) {
-            if (group.contains(Character.toString(p))) {
-                int index = group.indexOf(p);
-                if (index == group.length() - 1) {
-                    permutedChar = group.charAt(0);
-                } else {
-                    permutedChar = group.charAt(index + 1);
-                }
-                break;
-            }
+        int index = _alphabet.toInt(p);
+        if (index < 0) {
+            return p;
         }
-        return permutedChar;
+        return _alphabet.toChar(_forward[index]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        char invertedChar = c;
-        for (String group : _eachCycle) {
-            if (group.contains(Character.toString(c))) {
-                int index = group.indexOf(c);
-                if (index == 0) {
-                    invertedChar = group.charAt(group.length() - 1);
-                } else {
-                    invertedChar = group.charAt(index - 1);
-                }
-                break;
-            }
+        int index = _alphabet.toInt(c);
+        if (index < 0) {
+            return c;
         }
-        return invertedChar;
+        return _alphabet.toChar(_inverse[index]);
+    }
+
+    /** Returns the forward table of this permutation: entry K is the
+     *  image of K.  The caller must not modify it. */
+    int[] forwardTable() {
+        return _forward;
+    }
+
+    /** Returns the inverse table of this permutation: entry K is the
+     *  preimage of K.  The caller must not modify it. */
+    int[] inverseTable() {
+        return _inverse;
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -126,15 +188,10 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        int lettersSoFar = 0;
-        for (String oneCycle : _eachCycle) {
-            if (oneCycle.length() == 1) {
+        for (int i = 0; i < _forward.length; i++) {
+            if (_forward[i] == i) {
                 return false;
             }
-            lettersSoFar += oneCycle.length();
-        }
-        if (lettersSoFar < _alphabet.size()) {
-            return false;
         }
         return true;
     }
@@ -147,4 +204,10 @@ class Permutation {
 
     /** Each cycle of this permutation. */
     private String[] _eachCycle;
+
+    /** Image of each index under this permutation. */
+    private int[] _forward;
+
+    /** Preimage of each index under this permutation. */
+    private int[] _inverse;
 }
@@ -110,4 +110,28 @@ public class PermutationTest {
         perm.addCycle("Z");
     }
 
+    @Test
+    public void checkAddCycleUpdatesTables() {
+        perm = new Permutation("(AELTPHQXRU)", UPPER);
+        perm.addCycle("JZ");
+        assertEquals('Z', perm.permute('J'));
+        assertEquals(9, perm.invert(25));
+        assertEquals(4, perm.permute(26));
+        assertEquals(20, perm.invert(-26));
+    }
+
+    @Test
+    public void checkAdjacentCycles() {
+        perm = new Permutation("(AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)", UPPER);
+        assertEquals('A', perm.permute('Q'));
+        assertEquals('B', perm.permute('C'));
+        assertEquals('C', perm.invert('B'));
+        assertEquals(3, perm.eachCycle().length);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkCycleOutsideAlphabet() {
+        new Permutation("(AB) (C3)", UPPER);
+    }
+
 }
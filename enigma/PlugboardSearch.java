@@ -0,0 +1,433 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.EnigmaException.*;
+
+/** A search for the plugboard of a message whose rotor setting is known,
+ *  by hill-climbing: starting from a random plugboard, each change that
+ *  plugs two letters together (or unplugs them) is kept if it raises the
+ *  n-gram score of the decryption, until none does.  The substitution
+ *  made by the rotors alone at each position of the message is computed
+ *  once, and after each change only the n-grams covering positions whose
+ *  decrypted letter may change are rescored: those whose ciphertext
+ *  letter is one of the letters replugged, and those whose letter leaving
+ *  the rotors is.  The latter are kept in a list per letter.  Climbs from
+ *  different random plugboards run in parallel, and the best result is
+ *  kept.
+ *  @author Christopher Lee
+ */
+class PlugboardSearch {
+
+    /** A search for the plugboard used with the rotors and positions of
+     *  the setting line SETTING of ENGINE to encrypt CIPHERTEXT, scoring
+     *  decryptions with TABLE.  Any plugboard in SETTING is ignored, as
+     *  are spaces in CIPHERTEXT. */
+    PlugboardSearch(Engine engine, String setting, String ciphertext,
+                    NGramTable table) {
+        _alphabet = engine.alphabet();
+        if (table.alphabet().size() != _alphabet.size()) {
+            throw error("n-gram table has the wrong alphabet");
+        }
+        _table = table;
+        Machine machine = engine.machine(setting);
+        _rotors = CribSearch.settingLine(machine, machine.positionKey(), "");
+        machine.setPlugboard(new Permutation("", _alphabet));
+        _cipher = CribSearch.indices(_alphabet, ciphertext);
+        int n = _alphabet.size(), length = _cipher.length;
+        if ((long) length * n > Integer.MAX_VALUE) {
+            throw error("ciphertext too long");
+        }
+        _subs = new int[length * n];
+        for (int j = 0; j < length; j++) {
+            machine.advance(1);
+            machine.substitution(_subs, j * n);
+        }
+        _starts = new int[n + 1];
+        for (int c : _cipher) {
+            _starts[c + 1] += 1;
+        }
+        for (int c = 0; c < n; c++) {
+            _starts[c + 1] += _starts[c];
+        }
+        _byCipher = new int[length];
+        int[] fill = _starts.clone();
+        for (int j = 0; j < length; j++) {
+            _byCipher[fill[_cipher[j]]++] = j;
+        }
+    }
+
+    /** Returns the best of RESTARTS climbs, run on POOL from random
+     *  plugboards drawn with seeds SEED, SEED + 1, ...: its setting line
+     *  and its score. */
+    TopK.Entry<String> search(int restarts, long seed, ForkJoinPool pool) {
+        TopK<String> best = new TopK<>(1);
+        pool.invoke(new ParallelRange(0, restarts, r -> {
+            Climber climber = new Climber(new Random(seed + r));
+            climber.climb();
+            if (best.admits(climber._score)) {
+                best.offer(climber._score, settingLine(climber.cycles()));
+            }
+        }));
+        return best.entries().get(0);
+    }
+
+    /** Returns the n-gram score of the decryption of the ciphertext with
+     *  the plugboard whose cycles are PLUGBOARD, computed afresh. */
+    double score(String plugboard) {
+        int n = _alphabet.size();
+        int[] plug = new Permutation(plugboard, _alphabet).forwardTable();
+        int[] plain = new int[_cipher.length];
+        for (int j = 0; j < plain.length; j++) {
+            plain[j] = plug[_subs[j * n + plug[_cipher[j]]]];
+        }
+        return _table.score(plain);
+    }
+
+    /** Returns my rotor setting with the plugboard whose cycles are
+     *  PLUGBOARD. */
+    private String settingLine(String plugboard) {
+        return plugboard.isEmpty() ? _rotors : _rotors + " " + plugboard;
+    }
+
+    /** The state of one climb. */
+    private class Climber {
+        /** A climb starting from a plugboard drawn from RANDOM. */
+        Climber(Random random) {
+            int n = _alphabet.size(), length = _cipher.length;
+            _plug = new int[n];
+            for (int a = 0; a < n; a++) {
+                _plug[a] = a;
+            }
+            int[] letters = _plug.clone();
+            for (int i = n - 1; i > 0; i--) {
+                int k = random.nextInt(i + 1);
+                int t = letters[i];
+                letters[i] = letters[k];
+                letters[k] = t;
+            }
+            for (int i = random.nextInt(n / 2 + 1) - 1; i >= 0; i--) {
+                _plug[letters[2 * i]] = letters[2 * i + 1];
+                _plug[letters[2 * i + 1]] = letters[2 * i];
+            }
+            _out = new int[length];
+            _plain = new int[length];
+            _next = new int[length];
+            _prev = new int[length];
+            _head = new int[n];
+            Arrays.fill(_head, -1);
+            for (int j = 0; j < length; j++) {
+                _out[j] = _subs[j * n + _plug[_cipher[j]]];
+                _plain[j] = _plug[_out[j]];
+                link(j);
+            }
+            _score = _table.score(_plain);
+            _touched = new int[length];
+            _seen = new int[length];
+            _windows = new int[length];
+        }
+
+        /** Make changes to the plugboard while any raises my score. */
+        void climb() {
+            int n = _alphabet.size();
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int a = 0; a < n; a++) {
+                    for (int b = a + 1; b < n; b++) {
+                        replug(a, b);
+                        double delta = delta();
+                        if (delta > EPSILON) {
+                            commit(delta);
+                            improved = true;
+                        } else {
+                            undo();
+                        }
+                    }
+                }
+            }
+        }
+
+        /** Unplug A and B if they are plugged together, and otherwise
+         *  unplug them from their partners and plug them together,
+         *  recording the letters changed. */
+        private void replug(int a, int b) {
+            _changed = 0;
+            if (_plug[a] == b) {
+                set(a, a);
+                set(b, b);
+            } else {
+                set(_plug[a], _plug[a]);
+                set(_plug[b], _plug[b]);
+                set(a, b);
+                set(b, a);
+            }
+        }
+
+        /** Plug letter A to letter B, recording its old partner. */
+        private void set(int a, int b) {
+            if (_plug[a] != b) {
+                _changedLetters[_changed] = a;
+                _oldPartners[_changed] = _plug[a];
+                _changed += 1;
+                _plug[a] = b;
+            }
+        }
+
+        /** Restore the plugboard before the last replug. */
+        private void undo() {
+            for (int i = _changed - 1; i >= 0; i--) {
+                _plug[_changedLetters[i]] = _oldPartners[i];
+            }
+        }
+
+        /** Returns the change in my score made by the last replug, noting
+         *  the positions whose decrypted letters may have changed. */
+        private double delta() {
+            nextStamp();
+            _numTouched = 0;
+            for (int i = 0; i < _changed; i++) {
+                int a = _changedLetters[i];
+                for (int k = _starts[a]; k < _starts[a + 1]; k++) {
+                    touch(_byCipher[k]);
+                }
+                for (int j = _head[a]; j >= 0; j = _next[j]) {
+                    touch(j);
+                }
+            }
+            int order = _table.order(), last = _cipher.length - order;
+            double result = 0;
+            for (int t = 0; t < _numTouched; t++) {
+                int j = _touched[t];
+                int end = Math.min(j, last);
+                for (int s = Math.max(0, j - order + 1); s <= end; s++) {
+                    if (_windows[s] != _stamp) {
+                        _windows[s] = _stamp;
+                        result += _table.logProb(newIndex(s))
+                            - _table.logProb(_plain, s);
+                    }
+                }
+            }
+            return result;
+        }
+
+        /** Note position J as one whose decrypted letter may change. */
+        private void touch(int j) {
+            if (_seen[j] != _stamp) {
+                _seen[j] = _stamp;
+                _touched[_numTouched] = j;
+                _numTouched += 1;
+            }
+        }
+
+        /** Returns the n-gram table index of the decryption starting at
+         *  position S with the current plugboard. */
+        private int newIndex(int s) {
+            int n = _alphabet.size();
+            int index = 0;
+            for (int j = s; j < s + _table.order(); j++) {
+                index = index * n + _plug[_subs[j * n + _plug[_cipher[j]]]];
+            }
+            return index;
+        }
+
+        /** Keep the last replug, which changed my score by DELTA. */
+        private void commit(double delta) {
+            int n = _alphabet.size();
+            for (int t = 0; t < _numTouched; t++) {
+                int j = _touched[t];
+                int out = _subs[j * n + _plug[_cipher[j]]];
+                if (out != _out[j]) {
+                    unlink(j);
+                    _out[j] = out;
+                    link(j);
+                }
+                _plain[j] = _plug[out];
+            }
+            _score += delta;
+        }
+
+        /** Add position J to the list of positions whose letter leaving
+         *  the rotors is _out[J]. */
+        private void link(int j) {
+            int first = _head[_out[j]];
+            _next[j] = first;
+            _prev[j] = -1;
+            if (first >= 0) {
+                _prev[first] = j;
+            }
+            _head[_out[j]] = j;
+        }
+
+        /** Remove position J from its list. */
+        private void unlink(int j) {
+            if (_prev[j] >= 0) {
+                _next[_prev[j]] = _next[j];
+            } else {
+                _head[_out[j]] = _next[j];
+            }
+            if (_next[j] >= 0) {
+                _prev[_next[j]] = _prev[j];
+            }
+        }
+
+        /** Move to a stamp not yet used in _seen or _windows. */
+        private void nextStamp() {
+            _stamp += 1;
+            if (_stamp == Integer.MAX_VALUE) {
+                Arrays.fill(_seen, 0);
+                Arrays.fill(_windows, 0);
+                _stamp = 1;
+            }
+        }
+
+        /** Returns the cycles of my plugboard, in the order of the
+         *  alphabet. */
+        String cycles() {
+            StringBuilder result = new StringBuilder();
+            for (int a = 0; a < _plug.length; a++) {
+                if (_plug[a] > a) {
+                    if (result.length() > 0) {
+                        result.append(' ');
+                    }
+                    result.append('(').append(_alphabet.toChar(a))
+                        .append(_alphabet.toChar(_plug[a])).append(')');
+                }
+            }
+            return result.toString();
+        }
+
+        /** The plugboard: _plug[A] is the partner of letter A. */
+        private final int[] _plug;
+        /** _out[J] is the letter leaving the rotors at position J. */
+        private final int[] _out;
+        /** The decryption with _plug. */
+        private final int[] _plain;
+        /** Links of the lists of positions with each _out letter:
+         *  _head[A] is the first position with letter A, and _next and
+         *  _prev link each position to its neighbours, or are -1. */
+        private final int[] _head, _next, _prev;
+        /** Positions noted by the last delta(), numbering _numTouched. */
+        private final int[] _touched;
+        /** Number of positions in _touched. */
+        private int _numTouched;
+        /** _seen[J] == _stamp iff position J is in _touched, and
+         *  _windows[S] == _stamp iff the n-gram at S has been
+         *  rescored. */
+        private final int[] _seen, _windows;
+        /** The stamp of the last delta(). */
+        private int _stamp;
+        /** Letters changed by the last replug, and their old partners,
+         *  numbering _changed. */
+        private final int[] _changedLetters = new int[MAX_CHANGED],
+            _oldPartners = new int[MAX_CHANGED];
+        /** Number of letters changed by the last replug. */
+        private int _changed;
+        /** The score of _plain. */
+        private double _score;
+    }
+
+    /** Search for the plugboard given by ARGS: the name of a configuration
+     *  file, the setting line of the rotors, the ciphertext, the name of
+     *  a file of sample text, and optionally the number of letters in the
+     *  n-grams scored (by default, DEFAULT_ORDER) and the number of climbs
+     *  (by default, DEFAULT_RESTARTS).  Prints the best setting line and
+     *  its score. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 4 || args.length > 6) {
+                throw error("Usage: java enigma.PlugboardSearch CONFIG "
+                            + "SETTING CIPHERTEXT SAMPLE [ORDER [RESTARTS]]");
+            }
+            String config = read(args[0]);
+            String sample = read(args[3]);
+            int order = args.length > 4 ? integer(args[4]) : DEFAULT_ORDER;
+            int restarts =
+                args.length > 5 ? integer(args[5]) : DEFAULT_RESTARTS;
+            Engine engine = new Engine(config);
+            long start = System.nanoTime();
+            NGramTable table = new NGramTable(engine.alphabet(), order,
+                                              sample);
+            PlugboardSearch search =
+                new PlugboardSearch(engine, args[1], args[2], table);
+            TopK.Entry<String> best =
+                search.search(restarts, System.nanoTime(),
+                              ForkJoinPool.commonPool());
+            System.out.println(best.value());
+            System.err.printf("score %.1f after %d climbs in %.2f s%n",
+                              best.score(), restarts,
+                              (System.nanoTime() - start) / NANOS_PER_SECOND);
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Returns the contents of the file named NAME. */
+    private static String read(String name) throws IOException {
+        try {
+            return new String(Files.readAllBytes(new File(name).toPath()),
+                              Charset.defaultCharset());
+        } catch (IOException excp) {
+            throw new IOException("could not read " + name, excp);
+        }
+    }
+
+    /** Returns the positive integer ARG. */
+    private static int integer(String arg) {
+        try {
+            int result = Integer.parseInt(arg);
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        throw error("bad number: %s", arg);
+    }
+
+    /** Letters in the n-grams scored by default. */
+    static final int DEFAULT_ORDER = 3;
+
+    /** Number of climbs by default. */
+    static final int DEFAULT_RESTARTS = 64;
+
+    /** Least change in score counted as an improvement, so that rounding
+     *  cannot make a climb cycle. */
+    private static final double EPSILON = 1e-6;
+
+    /** Most letters a replug changes. */
+    private static final int MAX_CHANGED = 4;
+
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /** The alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** Scores decryptions. */
+    private final NGramTable _table;
+
+    /** The setting line of the rotors, with no plugboard. */
+    private final String _rotors;
+
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+
+    /** _subs[J * N + C] is the letter the rotors alone turn C into at
+     *  position J of the message, for an alphabet of size N. */
+    private final int[] _subs;
+
+    /** _byCipher[_starts[C] .. _starts[C + 1] - 1] are the positions at
+     *  which the ciphertext has letter C. */
+    private final int[] _starts, _byCipher;
+}
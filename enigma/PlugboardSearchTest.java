@@ -0,0 +1,47 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.AfterClass;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+/** The suite of all JUnit tests for the PlugboardSearch class.
+ *  @author Christopher Lee
+ */
+public class PlugboardSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Pool on which the tests run searches. */
+    private static final ForkJoinPool POOL = new ForkJoinPool(2);
+
+    /** Release the threads of POOL. */
+    @AfterClass
+    public static void shutDownPool() {
+        POOL.shutdown();
+    }
+
+    @Test
+    public void checkFindsPlugboard() {
+        Engine engine = new Engine(CribSearchTest.CONFIG);
+        String setting = "* B I III MK (AT) (CG) (KM) (OW)";
+        String cipher = engine.convert(setting, IocSearchTest.PLAIN);
+        NGramTable table =
+            new NGramTable(engine.alphabet(), 3, IocSearchTest.PLAIN);
+        PlugboardSearch search =
+            new PlugboardSearch(engine, "* B I III MK (QZ)", cipher, table);
+        TopK.Entry<String> best = search.search(8, 1, POOL);
+        assertEquals(setting, best.value());
+        assertEquals(table.score(
+                         CribSearch.indices(engine.alphabet(),
+                                            IocSearchTest.PLAIN)),
+                     best.score(), 1e-3);
+        assertEquals(search.score("(AT) (CG) (KM) (OW)"), best.score(),
+                     1e-3);
+    }
+}
@@ -11,14 +11,14 @@ class Reflector extends FixedRotor {
      * is PERM. */
     Reflector(String name, Permutation perm) {
         super(name, perm);
-        set(0);
     }
 
     @Override
-    void set(int posn) {
+    int checkSetting(int posn) {
         if (posn != 0) {
             throw error("reflector has only one position");
         }
+        return 0;
     }
 
     @Override
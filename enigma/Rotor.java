@@ -2,16 +2,34 @@ package enigma;
 
 import static enigma.EnigmaException.*;
 
-/** Superclass that represents a rotor in the enigma machine.
+/** Superclass that represents the wiring of a rotor in the enigma machine.
+ *  A Rotor is immutable: its position is kept by the machine holding it,
+ *  and passed to the methods that depend on it, so one Rotor may be used
+ *  by any number of machines at once.
  *  @author Christopher Lee
  */
 class Rotor {
 
-    /** A rotor named NAME whose permutation is given by PERM. */
+    /** A rotor named NAME whose permutation is given by PERM.  PERM's
+     *  cycles must not be changed afterwards. */
     Rotor(String name, Permutation perm) {
         _name = name;
         _permutation = perm;
-        _setting = 0;
+        int n = perm.size();
+        if (n <= MAX_TABLE_SIZE) {
+            int[] forward = perm.forwardTable(), inverse = perm.inverseTable();
+            _forwardTable = new int[n][n];
+            _backwardTable = new int[n][n];
+            for (int s = 0; s < n; s++) {
+                for (int p = 0; p < n; p++) {
+                    int contact = (p + s) % n;
+                    _forwardTable[s][p] = (forward[contact] - s + n) % n;
+                    _backwardTable[s][p] = (inverse[contact] - s + n) % n;
+                }
+            }
+        } else {
+            _forwardTable = _backwardTable = null;
+        }
     }
 
     /** Return my name. */
@@ -44,45 +62,46 @@ class Rotor {
         return false;
     }
 
-    /** Return my current setting. */
-    int setting() {
-        return _setting;
-    }
-
-    /** Set setting() to POSN.  */
-    void set(int posn) {
-        _setting = _permutation.wrap(posn);
-    }
-
-    /** Set setting() to character CPOSN. */
-    void set(char cposn) {
-        _setting = alphabet().toInt(cposn);
+    /** Return POSN as a setting of mine, modulo the size of my alphabet.
+     *  Throws an error if I cannot be set to POSN. */
+    int checkSetting(int posn) {
+        return _permutation.wrap(posn);
     }
 
     /** Return the conversion of P (an integer in the range 0..size()-1)
-     *  according to my permutation. */
-    int convertForward(int p) {
-        int currentIndex = _permutation.wrap(p + _setting);
+     *  according to my permutation, when I am at setting POSN. */
+    int convertForward(int p, int posn) {
+        if (_forwardTable != null) {
+            return _forwardTable[posn][p];
+        }
+        int currentIndex = _permutation.wrap(p + posn);
         int noShiftResult = _permutation.permute(currentIndex);
-        return _permutation.wrap(noShiftResult - _setting);
+        return _permutation.wrap(noShiftResult - posn);
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
-     *  according to the inverse of my permutation. */
-    int convertBackward(int e) {
-        int currentIndex = _permutation.wrap(e + _setting);
+     *  according to the inverse of my permutation, when I am at setting
+     *  POSN. */
+    int convertBackward(int e, int posn) {
+        if (_backwardTable != null) {
+            return _backwardTable[posn][e];
+        }
+        int currentIndex = _permutation.wrap(e + posn);
         int noShiftResult = _permutation.invert(currentIndex);
-        return _permutation.wrap(noShiftResult - _setting);
+        return _permutation.wrap(noShiftResult - posn);
     }
 
-    /** Returns true iff I am positioned to allow the rotor to my left
-     *  to advance. */
-    boolean atNotch() {
+    /** Returns true iff, at setting POSN, I am positioned to allow the
+     *  rotor to my left to advance. */
+    boolean atNotch(int posn) {
         return false;
     }
 
-    /** Advance me one position, if possible. By default, does nothing. */
-    void advance() {
+    /** Returns the number of times I must advance from setting POSN before
+     *  atNotch is true (0 if it is true at POSN), or -1 if it never
+     *  will be. */
+    int stepsToNotch(int posn) {
+        return -1;
     }
 
     @Override
@@ -94,8 +113,17 @@ class Rotor {
     private final String _name;
 
     /** The permutation implemented by this rotor in its 0 position. */
-    private Permutation _permutation;
+    private final Permutation _permutation;
+
+    /** Largest alphabet for which conversions are tabulated; beyond this
+     *  the tables would cost more memory than they save time. */
+    private static final int MAX_TABLE_SIZE = 256;
+
+    /** _forwardTable[S][P] is convertForward(P, S), or null if my
+     *  alphabet is too large to tabulate. */
+    private final int[][] _forwardTable;
 
-    /** Represents the shift of rotors. */
-    private int _setting;
+    /** _backwardTable[S][E] is convertBackward(E, S), or null if my
+     *  alphabet is too large to tabulate. */
+    private final int[][] _backwardTable;
 }
@@ -19,13 +19,11 @@ public class RotorTest {
         perm = new Permutation("(AELTPHQXRU) "
                 + "(BKNW) (CMOY) (DFG) (IV) (JZ) (S)", UPPER);
         rotor = new Rotor("Chris", perm);
-        rotor.set(5);
-        assertEquals(1, rotor.convertForward(0));
-        assertEquals(25, rotor.convertForward(21));
-        assertEquals(13, rotor.convertForward(13));
-        assertEquals(3, rotor.convertForward(16));
-        rotor.set(0);
-        assertEquals(4, rotor.convertForward(0));
+        assertEquals(1, rotor.convertForward(0, 5));
+        assertEquals(25, rotor.convertForward(21, 5));
+        assertEquals(13, rotor.convertForward(13, 5));
+        assertEquals(3, rotor.convertForward(16, 5));
+        assertEquals(4, rotor.convertForward(0, 0));
     }
 
     @Test
@@ -33,12 +31,23 @@ public class RotorTest {
         perm = new Permutation("(AELTPHQXRU) (BKNW) "
                 + "(CMOY) (DFG) (IV) (JZ) (S)", UPPER);
         rotor = new Rotor("ChrisLee", perm);
-        rotor.set(5);
-        assertEquals(24, rotor.convertBackward(0));
-        assertEquals(15, rotor.convertBackward(21));
-        assertEquals(13, rotor.convertBackward(13));
-        assertEquals(3, rotor.convertBackward(16));
-        rotor.set(0);
-        assertEquals(20, rotor.convertBackward(0));
+        assertEquals(24, rotor.convertBackward(0, 5));
+        assertEquals(15, rotor.convertBackward(21, 5));
+        assertEquals(13, rotor.convertBackward(13, 5));
+        assertEquals(3, rotor.convertBackward(16, 5));
+        assertEquals(20, rotor.convertBackward(0, 0));
+    }
+
+    @Test
+    public void checkEverySetting() {
+        perm = new Permutation(NAVALA.get("IV"), UPPER);
+        rotor = new Rotor("IV", perm);
+        for (int s = 0; s < 26; s++) {
+            for (int p = 0; p < 26; p++) {
+                int expected = perm.wrap(perm.permute(p + s) - s);
+                assertEquals(expected, rotor.convertForward(p, s));
+                assertEquals(p, rotor.convertBackward(expected, s));
+            }
+        }
     }
 }
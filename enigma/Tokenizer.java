@@ -0,0 +1,196 @@
+package enigma;
+
+/** A single-pass reader of the tokens of a configuration file or setting
+ *  line: words, separated by whitespace or parentheses, parenthesized
+ *  cycles and single punctuation characters.  Errors report the position
+ *  of the offending token, as a line and column (from 1) in a
+ *  configuration or a column in a setting line; these are worked out
+ *  only when an error is reported.
+ *  @author Christopher Lee
+ */
+class Tokenizer {
+
+    /** A tokenizer reading TEXT, which is described in error messages as
+     *  WHAT.  Positions are reported with line numbers iff LINES. */
+    Tokenizer(String text, String what, boolean lines) {
+        _text = text;
+        _what = what;
+        _lines = lines;
+    }
+
+    /** Returns true iff only whitespace remains. */
+    boolean atEnd() {
+        skipWhitespace();
+        return _pos == _text.length();
+    }
+
+    /** Returns the first character of the next token, which must
+     *  exist. */
+    char peek() {
+        if (atEnd()) {
+            throw error("unexpected end of %s", _what);
+        }
+        return _text.charAt(_pos);
+    }
+
+    /** Returns true iff the next token is a cycle. */
+    boolean atCycle() {
+        return !atEnd() && _text.charAt(_pos) == '(';
+    }
+
+    /** Consume the single character C, which must be next. */
+    void expect(char c) {
+        if (peek() != c) {
+            throw error("expected '%c'", c);
+        }
+        _start = _pos;
+        _pos += 1;
+    }
+
+    /** Returns the rest of the current line, less surrounding
+     *  whitespace, and moves to the start of the next. */
+    String restOfLine() {
+        while (_pos < _text.length() && isBlank(_text.charAt(_pos))) {
+            _pos += 1;
+        }
+        _start = _pos;
+        int end = _pos;
+        while (end < _text.length() && !isNewline(_text.charAt(end))) {
+            end += 1;
+        }
+        _pos = end;
+        int last = end;
+        while (last > _start && isBlank(_text.charAt(last - 1))) {
+            last -= 1;
+        }
+        return _text.substring(_start, last);
+    }
+
+    /** Returns the next token, a word, described as WHAT in the error
+     *  reported if there is none. */
+    String word(String what) {
+        if (atEnd() || isDelimiter(_text.charAt(_pos))) {
+            throw error("expected %s", what);
+        }
+        while (_pos < _text.length() && !isDelimiter(_text.charAt(_pos))) {
+            _pos += 1;
+        }
+        return _text.substring(_start, _pos);
+    }
+
+    /** Returns the next token, a non-negative decimal integer, described
+     *  as WHAT in error messages. */
+    int integer(String what) {
+        String token = word(what);
+        int result = 0;
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c < '0' || c > '9' || result > (Integer.MAX_VALUE - 9) / 10) {
+                throw error("bad %s: %s", what, token);
+            }
+            result = result * 10 + c - '0';
+        }
+        return result;
+    }
+
+    /** Read the next token, a cycle of characters in ALPHABET, and
+     *  append it, parentheses included, to OUT. */
+    void cycle(Alphabet alphabet, StringBuilder out) {
+        expect('(');
+        int start = _start;
+        out.append('(');
+        while (true) {
+            if (_pos == _text.length()) {
+                _start = start;
+                throw error("unclosed cycle");
+            }
+            char c = _text.charAt(_pos);
+            if (c == ')') {
+                break;
+            }
+            _start = _pos;
+            if (!alphabet.contains(c)) {
+                throw error(isDelimiter(c) ? "bad character in cycle"
+                            : "character '%c' is not in the alphabet", c);
+            }
+            out.append(c);
+            _pos += 1;
+        }
+        _pos += 1;
+        out.append(')');
+    }
+
+    /** Check that every character of the word last read is in ALPHABET,
+     *  reporting the position of the first that is not. */
+    void checkWord(Alphabet alphabet) {
+        for (int i = _start; i < _pos; i++) {
+            if (!alphabet.contains(_text.charAt(i))) {
+                _start = i;
+                throw error("character '%c' is not in the alphabet",
+                            _text.charAt(i));
+            }
+        }
+    }
+
+    /** Returns an exception reporting the message formed from MSGFORMAT
+     *  and ARGS, as for String.format, at the position of the token last
+     *  read (or being read). */
+    EnigmaException error(String msgFormat, Object... args) {
+        String msg = String.format(msgFormat, args);
+        int line = 1, column = 1;
+        for (int i = 0; i < _start && i < _text.length(); i++) {
+            char c = _text.charAt(i);
+            if (c == '\n' || (c == '\r' && (i + 1 == _text.length()
+                                            || _text.charAt(i + 1) != '\n'))) {
+                line += 1;
+                column = 1;
+            } else if (c != '\r') {
+                column += 1;
+            }
+        }
+        if (_lines) {
+            return EnigmaException.error("%s, line %d, column %d: %s",
+                                         _what, line, column, msg);
+        }
+        return EnigmaException.error("%s, column %d: %s", _what, column, msg);
+    }
+
+    /** Advance past any whitespace. */
+    private void skipWhitespace() {
+        while (_pos < _text.length()
+               && Character.isWhitespace(_text.charAt(_pos))) {
+            _pos += 1;
+        }
+        _start = _pos;
+    }
+
+    /** Returns true iff C separates words. */
+    private static boolean isDelimiter(char c) {
+        return Character.isWhitespace(c) || c == '(' || c == ')';
+    }
+
+    /** Returns true iff C ends a line. */
+    private static boolean isNewline(char c) {
+        return c == '\n' || c == '\r';
+    }
+
+    /** Returns true iff C is whitespace within a line. */
+    private static boolean isBlank(char c) {
+        return Character.isWhitespace(c) && !isNewline(c);
+    }
+
+    /** The text being read. */
+    private final String _text;
+
+    /** Description of _text for error messages. */
+    private final String _what;
+
+    /** True iff positions are reported with line numbers. */
+    private final boolean _lines;
+
+    /** Index in _text of the next character to read. */
+    private int _pos;
+
+    /** Index in _text of the start of the token last read. */
+    private int _start;
+}
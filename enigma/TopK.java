@@ -0,0 +1,103 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static enigma.EnigmaException.*;
+
+/** The highest-scoring values offered, up to a fixed number, kept without
+ *  locks so that many threads may offer values at once.  The entries are
+ *  an immutable array sorted by decreasing score, replaced by
+ *  compare-and-set.  Once the array is full, a value scoring no more than
+ *  the lowest entry is rejected by a single read, which is the usual case
+ *  in a long search; only values that get in allocate.  Each of those
+ *  copies the array, so costs time proportional to the number kept
+ *  rather than its logarithm as in a heap, but the number kept is small,
+ *  values get in ever more rarely as the search goes on, and a heap
+ *  could not be read or replaced with one atomic operation.
+ *  @author Christopher Lee
+ */
+class TopK<T> {
+
+    /** An empty set of the CAPACITY highest-scoring values. */
+    TopK(int capacity) {
+        if (capacity <= 0) {
+            throw error("bad number of results: %d", capacity);
+        }
+        _capacity = capacity;
+        _entries = new AtomicReference<>(empty());
+    }
+
+    /** Returns true iff a value scoring SCORE would be kept now. */
+    boolean admits(double score) {
+        Entry<T>[] entries = _entries.get();
+        return entries.length < _capacity
+            || score > entries[entries.length - 1].score();
+    }
+
+    /** Keep VALUE, which scores SCORE, if it is among the highest
+     *  scoring values offered.  Among equal scores, those offered first
+     *  are kept. */
+    void offer(double score, T value) {
+        Entry<T> entry = new Entry<>(score, value);
+        while (true) {
+            Entry<T>[] old = _entries.get();
+            int n = old.length;
+            if (n == _capacity && score <= old[n - 1].score()) {
+                return;
+            }
+            int i = n;
+            while (i > 0 && old[i - 1].score() < score) {
+                i -= 1;
+            }
+            Entry<T>[] next = Arrays.copyOf(old, Math.min(n + 1, _capacity));
+            System.arraycopy(old, i, next, i + 1, next.length - i - 1);
+            next[i] = entry;
+            if (_entries.compareAndSet(old, next)) {
+                return;
+            }
+        }
+    }
+
+    /** Returns my entries, highest score first. */
+    List<Entry<T>> entries() {
+        return Arrays.asList(_entries.get().clone());
+    }
+
+    /** Returns an empty array of entries. */
+    @SuppressWarnings("unchecked")
+    private static <T> Entry<T>[] empty() {
+        return (Entry<T>[]) new Entry<?>[0];
+    }
+
+    /** A value and its score. */
+    static class Entry<T> {
+        /** VALUE, scoring SCORE. */
+        Entry(double score, T value) {
+            _score = score;
+            _value = value;
+        }
+
+        /** Returns my score. */
+        double score() {
+            return _score;
+        }
+
+        /** Returns my value. */
+        T value() {
+            return _value;
+        }
+
+        /** My score. */
+        private final double _score;
+        /** My value. */
+        private final T _value;
+    }
+
+    /** Largest number of entries kept. */
+    private final int _capacity;
+
+    /** The entries kept, highest score first. */
+    private final AtomicReference<Entry<T>[]> _entries;
+}
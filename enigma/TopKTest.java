@@ -0,0 +1,62 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.AfterClass;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/** The suite of all JUnit tests for the TopK class.
+ *  @author Christopher Lee
+ */
+public class TopKTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Pool on which the tests run searches. */
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    /** Release the threads of POOL. */
+    @AfterClass
+    public static void shutDownPool() {
+        POOL.shutdown();
+    }
+
+    @Test
+    public void checkKeepsBest() {
+        TopK<String> best = new TopK<>(3);
+        assertTrue(best.admits(0));
+        best.offer(2, "b");
+        best.offer(1, "a");
+        best.offer(4, "d");
+        assertFalse(best.admits(1));
+        best.offer(3, "c");
+        best.offer(0, "z");
+        best.offer(3, "c2");
+        List<TopK.Entry<String>> entries = best.entries();
+        assertEquals(3, entries.size());
+        assertEquals("d", entries.get(0).value());
+        assertEquals("c", entries.get(1).value());
+        assertEquals("c2", entries.get(2).value());
+        assertEquals(3.0, entries.get(2).score(), 0.0);
+    }
+
+    @Test
+    public void checkConcurrentOffers() {
+        TopK<Integer> best = new TopK<>(10);
+        POOL.invoke(new ParallelRange(0, 10000, k -> {
+            int value = (k * 7919) % 10000;
+            best.offer(value, value);
+        }));
+        List<TopK.Entry<Integer>> entries = best.entries();
+        assertEquals(10, entries.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(9999 - i, (int) entries.get(i).value());
+        }
+    }
+}
@@ -10,7 +10,15 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        System.exit(textui.runClasses(PermutationTest.class,
+        System.exit(textui.runClasses(AlphabetTest.class, EngineTest.class,
+                                      CribSearchTest.class,
+                                      BombeTest.class,
+                                      CribPlacementTest.class,
+                                      IocSearchTest.class, TopKTest.class,
+                                      NGramTableTest.class,
+                                      HistogramTest.class, MainTest.class,
+                                      PlugboardSearchTest.class,
+                                      PermutationTest.class,
                                       MovingRotorTest.class,
                 MachineTest.class, RotorTest.class));
     }
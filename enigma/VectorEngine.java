@@ -0,0 +1,88 @@
+package enigma;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/** Keystream conversion of byte messages using the JDK Vector API, which
+ *  handles as many characters per iteration as the processor's vectors
+ *  hold int lanes (16 with 512-bit vectors).  Each block of message
+ *  bytes is loaded as one vector, widened to ints, mapped to alphabet
+ *  indices, offset into the keystream tables, substituted and mapped
+ *  back to characters by three gathers, and narrowed and stored as
+ *  bytes.  Requires the jdk.incubator.vector module at compile and run
+ *  time (see the vector target of the Makefile); Machine loads this
+ *  class by name and uses scalar code if it cannot.
+ *  @author Christopher Lee
+ */
+final class VectorEngine implements ByteConverter {
+
+    /** Called by Machine through reflection. */
+    VectorEngine() {
+    }
+
+    @Override
+    public boolean available() {
+        return INTS.length() >= MIN_LANES;
+    }
+
+    @Override
+    public int blockSize() {
+        return INTS.length();
+    }
+
+    @Override
+    public int convert(int[] tables, int size, int firstStep, byte[] msg,
+                       int start, int n, byte[] out, int outStart,
+                       int[] indices, int[] chars) {
+        int lanes = INTS.length();
+        int[] scratch = SCRATCH.get();
+        IntVector lane = IntVector.zero(INTS).addIndex(1);
+        int k = 0;
+        for (; k + lanes <= n; k += lanes) {
+            ByteVector bytes = ByteVector.fromArray(BYTES, msg, start + k);
+            ((IntVector) bytes.convertShape(VectorOperators.B2I, INTS, 0))
+                .and(BYTE_MASK)
+                .intoArray(scratch, 0);
+            IntVector index =
+                IntVector.fromArray(INTS, indices, 0, scratch, 0);
+            if (index.compare(VectorOperators.LT, 0).anyTrue()) {
+                break;
+            }
+            index.add(lane.add(firstStep + k).mul(size))
+                .intoArray(scratch, 0);
+            IntVector.fromArray(INTS, tables, 0, scratch, 0)
+                .intoArray(scratch, 0);
+            ((ByteVector) IntVector.fromArray(INTS, chars, 0, scratch, 0)
+                .convertShape(VectorOperators.I2B, BYTES, 0))
+                .intoArray(out, outStart + k);
+        }
+        return k;
+    }
+
+    /** Fewest int lanes worth using, and the fewest for which there is a
+     *  byte vector shape with as many lanes. */
+    private static final int MIN_LANES = 8;
+
+    /** Mask selecting the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Vector shape used for ints. */
+    private static final VectorSpecies<Integer> INTS =
+        IntVector.SPECIES_PREFERRED;
+
+    /** Vector shape used for bytes, with as many lanes as INTS if
+     *  there is one. */
+    private static final VectorSpecies<Byte> BYTES =
+        INTS.length() < MIN_LANES ? ByteVector.SPECIES_64
+        : VectorSpecies.of(byte.class,
+                           VectorShape.forBitSize(INTS.length() * 8));
+
+    /** The gather indices of each thread.  Allocating them in each call
+     *  of convert instead makes the server compiler of JDK 17 print
+     *  "Default case invoked" on the standard error. */
+    private static final ThreadLocal<int[]> SCRATCH =
+        ThreadLocal.withInitial(() -> new int[INTS.length()]);
+}
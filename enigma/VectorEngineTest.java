@@ -0,0 +1,94 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the VectorEngine class, which is
+ *  compiled and run only by the vector targets of the Makefile.
+ *  @author Christopher Lee
+ */
+public class VectorEngineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Alphabet used: the upper-case letters. */
+    private static final String LETTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    /** Returns the alphabet index in LETTERS of each byte value, or -1. */
+    private static int[] indices() {
+        int[] result = new int[256];
+        Arrays.fill(result, -1);
+        for (int i = 0; i < LETTERS.length(); i++) {
+            result[LETTERS.charAt(i)] = i;
+        }
+        return result;
+    }
+
+    /** Returns the character of LETTERS with each alphabet index. */
+    private static int[] chars() {
+        int[] result = new int[LETTERS.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = LETTERS.charAt(i);
+        }
+        return result;
+    }
+
+    @Test
+    public void checkConvert() {
+        VectorEngine engine = new VectorEngine();
+        int block = engine.blockSize();
+        Random random = new Random(42);
+        int size = LETTERS.length(), steps = 300;
+        int[] tables = new int[size * steps];
+        for (int i = 0; i < tables.length; i++) {
+            tables[i] = random.nextInt(size);
+        }
+        int[] indices = indices();
+        int[] chars = chars();
+        for (int n : new int[] {0, 1, block - 1, block, 4 * block + 3}) {
+            byte[] msg = new byte[n + 2];
+            for (int k = 0; k < msg.length; k++) {
+                msg[k] = (byte) LETTERS.charAt(random.nextInt(size));
+            }
+            byte[] out = new byte[n + 5];
+            int first = 7;
+            int done = engine.convert(tables, size, first, msg, 0, n, out,
+                                      3, indices, chars);
+            assertEquals(n - n % block, done);
+            for (int k = 0; k < done; k++) {
+                int index = indices[msg[k]];
+                assertEquals(LETTERS.charAt(tables[(first + k) * size
+                                                   + index]),
+                             out[3 + k]);
+            }
+        }
+    }
+
+    @Test
+    public void checkStopsAtSpace() {
+        VectorEngine engine = new VectorEngine();
+        int block = engine.blockSize();
+        int size = LETTERS.length();
+        int[] tables = new int[size * 4 * block];
+        int[] indices = indices();
+        int[] chars = chars();
+        byte[] msg = new byte[3 * block];
+        Arrays.fill(msg, (byte) 'A');
+        msg[block + 1] = ' ';
+        byte[] out = new byte[msg.length];
+        assertEquals(block, engine.convert(tables, size, 0, msg, 0,
+                                           msg.length, out, 0, indices,
+                                           chars));
+        msg[block + 1] = 'a';
+        assertEquals(block, engine.convert(tables, size, 0, msg, 0,
+                                           msg.length, out, 0, indices,
+                                           chars));
+    }
+}